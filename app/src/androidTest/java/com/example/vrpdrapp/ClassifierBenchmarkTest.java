@@ -0,0 +1,95 @@
+package com.example.vrpdrapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Rect;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares EMNISTNet with the HOG classifiers on the labelled characters of the character_samples.bin asset
+ * (see HogCharacterClassifier for the format), half of them being used to train the HOG models. Results are
+ * logged under the ClassifierBenchmark tag and the trained SVM is left in the app files directory as
+ * hog_svm_characters.yml.
+ *
+ * Run with: ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.example.vrpdrapp.ClassifierBenchmarkTest
+ */
+@RunWith(AndroidJUnit4.class)
+public class ClassifierBenchmarkTest {
+
+    private static final String TAG = ClassifierBenchmarkTest.class.getSimpleName();
+
+    private static final String SAMPLES_ASSET = "character_samples.bin";
+    private static final int RUNS = 10;
+
+    @Test
+    public void compareClassifiers() throws IOException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        assertTrue(OpenCVLoader.initDebug());
+
+        CharacterBatch samples = new CharacterBatch(256);
+        int[] labels;
+        try (InputStream is = context.getAssets().open(SAMPLES_ASSET)) {
+            labels = HogCharacterClassifier.readSamples(is, samples);
+        } catch (IOException e) {
+            assumeTrue("No "+SAMPLES_ASSET+" asset to benchmark on", false);
+            return;
+        }
+        assumeTrue(samples.size() >= 2);
+
+        CharacterBatch train = new CharacterBatch(samples.size() / 2 + 1);
+        CharacterBatch test = new CharacterBatch(samples.size() / 2 + 1);
+        int[] trainLabels = split(samples, labels, 0, train);
+        int[] testLabels = split(samples, labels, 1, test);
+
+        HogCharacterClassifier svm = HogCharacterClassifier.trainSvm(train, trainLabels);
+        HogCharacterClassifier knn = HogCharacterClassifier.trainKNearest(train, trainLabels, 3);
+        EMNISTNet emnistNet = new EMNISTNet(context, "emnist_net_custom_mobile.pth");
+
+        List<ClassifierBenchmark.Result> results = ClassifierBenchmark.compare(test, testLabels, RUNS,
+                new String[] { "EMNISTNet", "HOG + SVM", "HOG + KNearest" }, emnistNet, svm, knn);
+        for (ClassifierBenchmark.Result result : results) {
+            assertEquals(test.size(), result.samples);
+        }
+
+        File model = new File(context.getFilesDir(), "hog_svm_characters.yml");
+        svm.save(model.getAbsolutePath());
+        Log.i(TAG, "HOG + SVM model saved to "+model.getAbsolutePath());
+
+        samples.release();
+        train.release();
+        test.release();
+    }
+
+    // every other sample, starting at first
+    private static int[] split(CharacterBatch samples, int[] labels, int first, CharacterBatch target) {
+        float[] data = samples.getData();
+        byte[] pixels = new byte[CharacterBatch.CHARACTER_PIXELS];
+        Rect box = new Rect(0, 0, CharacterBatch.CHARACTER_SIZE, CharacterBatch.CHARACTER_SIZE);
+
+        int[] targetLabels = new int[(samples.size() - first + 1) / 2];
+        for (int i = first, n = 0; i < samples.size(); i += 2, n++) {
+            int offset = samples.getOffset(i);
+            for (int p = 0; p < pixels.length; p++) {
+                pixels[p] = (byte) Math.round(data[offset + p] * 255.0f);
+            }
+            target.add(pixels, box);
+            targetLabels[n] = labels[i];
+        }
+
+        return targetLabels;
+    }
+}
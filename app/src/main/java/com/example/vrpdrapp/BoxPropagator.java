@@ -0,0 +1,318 @@
+package com.example.vrpdrapp;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.Video;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Moves the plate boxes of the last detection from frame to frame with sparse optical flow, so the detector
+ * only has to run every few frames.
+ *
+ * Corners found inside each box are tracked with pyramidal Lucas-Kanade on a downscaled gray copy of the
+ * frame and checked by tracking them back (forward-backward error). A box moves by the median displacement
+ * of its surviving corners and scales by the median change of their spacing. Once too few corners of a box
+ * survive the flow is lost and a new detection is needed.
+ */
+public class BoxPropagator {
+
+    private static final int MAX_CORNERS_PER_BOX = 24;
+    private static final int MIN_CORNERS_PER_BOX = 4;
+    // pixels of the downscaled frame
+    private static final float MAX_FORWARD_BACKWARD_ERROR = 1.0f;
+
+    private float scale;
+    private int detectionInterval;
+    private float minTrackedRatio;
+
+    private Size winSize = new Size(15, 15);
+    private int maxLevel = 2;
+
+    private Mat resized = new Mat();
+    private Mat gray = new Mat();
+    private Mat prevGray = new Mat();
+
+    private MatOfPoint corners = new MatOfPoint();
+    private MatOfPoint2f prevPoints = new MatOfPoint2f();
+    private MatOfPoint2f nextPoints = new MatOfPoint2f();
+    private MatOfPoint2f backPoints = new MatOfPoint2f();
+    private MatOfByte status = new MatOfByte();
+    private MatOfByte backStatus = new MatOfByte();
+    private MatOfFloat error = new MatOfFloat();
+
+    // tracked corners, (x, y) pairs in the downscaled frame, and the box each of them belongs to
+    private int numPoints = 0;
+    private float[] points = new float[0];
+    private float[] next = new float[0];
+    private float[] back = new float[0];
+    private byte[] found = new byte[0];
+    private byte[] foundBack = new byte[0];
+    private int[] owners = new int[0];
+    private int[] cornerBuffer = new int[2 * MAX_CORNERS_PER_BOX];
+
+    private List<Rect> boxes = new ArrayList<>();
+    private int[] initialPoints = new int[0];
+    private float[] confidences = new float[0];
+
+    // per box workspace for the medians
+    private float[] dx = new float[0];
+    private float[] dy = new float[0];
+    private float[] ratios = new float[0];
+
+    private int framesSinceDetection = 0;
+    private volatile boolean lost = true;
+
+    /**
+     * @param scale downscale factor of the frame the flow is computed on
+     * @param detectionInterval frames propagated between two detections
+     * @param minTrackedRatio fraction of the corners of a box that must survive, below it the flow is lost
+     */
+    public BoxPropagator(float scale, int detectionInterval, float minTrackedRatio) {
+        this.scale = scale;
+        this.detectionInterval = detectionInterval;
+        this.minTrackedRatio = minTrackedRatio;
+    }
+
+    /**
+     * True when the next frame must go through the detector: the interval elapsed, the flow was lost or
+     * there is nothing to propagate.
+     */
+    public boolean needsDetection() {
+        return lost || boxes.isEmpty() || framesSinceDetection >= detectionInterval;
+    }
+
+    /**
+     * Starts propagating the boxes of a detection.
+     */
+    public void reset(Mat frame, List<Rect> detections) {
+        toGray(frame, prevGray);
+
+        boxes.clear();
+        numPoints = 0;
+        ensureBoxCapacity(detections.size());
+        ensurePointCapacity(detections.size() * MAX_CORNERS_PER_BOX);
+
+        for (int b = 0; b < detections.size(); b++) {
+            Rect box = detections.get(b);
+            boxes.add(box.clone());
+            confidences[b] = 1.0f;
+
+            Rect small = clip(new Rect((int) (box.x * scale), (int) (box.y * scale),
+                    (int) (box.width * scale), (int) (box.height * scale)), prevGray.cols(), prevGray.rows());
+            if(small.width < 2 || small.height < 2) {
+                initialPoints[b] = 0;
+                continue;
+            }
+
+            Mat roi = prevGray.submat(small);
+            Imgproc.goodFeaturesToTrack(roi, corners, MAX_CORNERS_PER_BOX, 0.01, 2);
+            roi.release();
+
+            int count = (int) corners.total();
+            corners.get(0, 0, cornerBuffer);
+            for (int i = 0; i < count; i++) {
+                points[2 * numPoints] = cornerBuffer[2 * i] + small.x;
+                points[2 * numPoints + 1] = cornerBuffer[2 * i + 1] + small.y;
+                owners[numPoints] = b;
+                ++numPoints;
+            }
+            initialPoints[b] = count;
+        }
+
+        framesSinceDetection = 0;
+        lost = false;
+    }
+
+    /**
+     * Moves the boxes to a new frame.
+     *
+     * @return propagated boxes in the order of the last detection (the list is reused), null when the flow
+     * was lost and the frame must go through the detector
+     */
+    public List<Rect> propagate(Mat frame) {
+        if(needsDetection())
+            return null;
+
+        toGray(frame, gray);
+
+        if(numPoints > 0) {
+            prevPoints.alloc(numPoints);
+            prevPoints.put(0, 0, points);
+
+            Video.calcOpticalFlowPyrLK(prevGray, gray, prevPoints, nextPoints, status, error, winSize, maxLevel);
+            Video.calcOpticalFlowPyrLK(gray, prevGray, nextPoints, backPoints, backStatus, error, winSize, maxLevel);
+
+            nextPoints.get(0, 0, next);
+            backPoints.get(0, 0, back);
+            status.get(0, 0, found);
+            backStatus.get(0, 0, foundBack);
+        }
+
+        for (int b = 0; b < boxes.size(); b++) {
+            if(!moveBox(b, frame.cols(), frame.rows())) {
+                lost = true;
+                return null;
+            }
+        }
+
+        // keep the surviving corners for the next frame
+        int kept = 0;
+        for (int i = 0; i < numPoints; i++) {
+            if(survived(i)) {
+                points[2 * kept] = next[2 * i];
+                points[2 * kept + 1] = next[2 * i + 1];
+                owners[kept] = owners[i];
+                ++kept;
+            }
+        }
+        numPoints = kept;
+
+        Mat swap = prevGray;
+        prevGray = gray;
+        gray = swap;
+
+        ++framesSinceDetection;
+
+        return boxes;
+    }
+
+    private boolean moveBox(int b, int frameWidth, int frameHeight) {
+        int n = 0;
+        int pairs = 0;
+        int previous = -1;
+        for (int i = 0; i < numPoints; i++) {
+            if(owners[i] != b || !survived(i))
+                continue;
+
+            dx[n] = next[2 * i] - points[2 * i];
+            dy[n] = next[2 * i + 1] - points[2 * i + 1];
+            ++n;
+
+            if(previous >= 0) {
+                float before = distance(points, previous, i);
+                if(before > 2.0f) {
+                    ratios[pairs++] = distance(next, previous, i) / before;
+                }
+            }
+            previous = i;
+        }
+
+        confidences[b] = initialPoints[b] == 0 ? 0.0f : (float) n / initialPoints[b];
+        if(n < MIN_CORNERS_PER_BOX || confidences[b] < minTrackedRatio)
+            return false;
+
+        float shiftX = median(dx, n) / scale;
+        float shiftY = median(dy, n) / scale;
+        float zoom = pairs > 0 ? median(ratios, pairs) : 1.0f;
+
+        Rect box = boxes.get(b);
+        float cx = box.x + box.width * 0.5f + shiftX;
+        float cy = box.y + box.height * 0.5f + shiftY;
+        float w = box.width * zoom;
+        float h = box.height * zoom;
+
+        box.x = Math.round(cx - w * 0.5f);
+        box.y = Math.round(cy - h * 0.5f);
+        box.width = Math.round(w);
+        box.height = Math.round(h);
+        Rect clipped = clip(box, frameWidth, frameHeight);
+        box.x = clipped.x;
+        box.y = clipped.y;
+        box.width = clipped.width;
+        box.height = clipped.height;
+
+        return box.width > 0 && box.height > 0;
+    }
+
+    private boolean survived(int i) {
+        if(found[i] == 0 || foundBack[i] == 0)
+            return false;
+
+        float ex = back[2 * i] - points[2 * i];
+        float ey = back[2 * i + 1] - points[2 * i + 1];
+        return ex * ex + ey * ey <= MAX_FORWARD_BACKWARD_ERROR * MAX_FORWARD_BACKWARD_ERROR;
+    }
+
+    private void toGray(Mat frame, Mat output) {
+        Imgproc.resize(frame, resized, new Size(), scale, scale, Imgproc.INTER_AREA);
+        Imgproc.cvtColor(resized, output, Imgproc.COLOR_RGB2GRAY);
+    }
+
+    private static float distance(float[] pts, int i, int j) {
+        float x = pts[2 * i] - pts[2 * j];
+        float y = pts[2 * i + 1] - pts[2 * j + 1];
+        return (float) Math.sqrt(x * x + y * y);
+    }
+
+    private static float median(float[] values, int n) {
+        Arrays.sort(values, 0, n);
+        return n % 2 == 1 ? values[n / 2] : 0.5f * (values[n / 2 - 1] + values[n / 2]);
+    }
+
+    private static Rect clip(Rect box, int width, int height) {
+        int x0 = Math.max(box.x, 0);
+        int y0 = Math.max(box.y, 0);
+        int x1 = Math.min(box.x + box.width, width);
+        int y1 = Math.min(box.y + box.height, height);
+        return new Rect(x0, y0, Math.max(x1 - x0, 0), Math.max(y1 - y0, 0));
+    }
+
+    private void ensureBoxCapacity(int count) {
+        if(initialPoints.length >= count)
+            return;
+
+        initialPoints = new int[count];
+        confidences = new float[count];
+    }
+
+    private void ensurePointCapacity(int count) {
+        if(owners.length >= count)
+            return;
+
+        points = new float[2 * count];
+        next = new float[2 * count];
+        back = new float[2 * count];
+        found = new byte[count];
+        foundBack = new byte[count];
+        owners = new int[count];
+        dx = new float[count];
+        dy = new float[count];
+        ratios = new float[count];
+    }
+
+    /**
+     * Forces a detection on the next frame, e.g. after frames were skipped.
+     */
+    public void invalidate() {
+        lost = true;
+    }
+
+    /**
+     * Fraction of the corners of a box still tracked in the last propagated frame.
+     */
+    public float getConfidence(int box) {
+        return confidences[box];
+    }
+
+    public void release() {
+        resized.release();
+        gray.release();
+        prevGray.release();
+        corners.release();
+        prevPoints.release();
+        nextPoints.release();
+        backPoints.release();
+        status.release();
+        backStatus.release();
+        error.release();
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.vrpdrapp;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Character crops packed into one contiguous N x 1 x 28 x 28 float buffer, scaled to [0, 1], with the
+ * bounding box of each character recorded alongside. Buffers grow on demand and are reused after clear().
+ */
+public class CharacterBatch {
+
+    public static final int CHARACTER_SIZE = 28;
+    public static final int CHARACTER_PIXELS = CHARACTER_SIZE * CHARACTER_SIZE;
+
+    private float[] data;
+    // x, y, width, height of each character
+    private int[] boxes;
+    // fraction of lit pixels of each character, used to reject crops before classification
+    private float[] inkRatios;
+    private int count = 0;
+
+    private Mat resizedCharacter = new Mat(CHARACTER_SIZE, CHARACTER_SIZE, CvType.CV_8UC1);
+    private Size characterSize = new Size(CHARACTER_SIZE, CHARACTER_SIZE);
+    private byte[] pixels = new byte[CHARACTER_PIXELS];
+
+    public CharacterBatch(int capacity) {
+        capacity = Math.max(1, capacity);
+        data = new float[capacity * CHARACTER_PIXELS];
+        boxes = new int[capacity * 4];
+        inkRatios = new float[capacity];
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int capacity() {
+        return boxes.length / 4;
+    }
+
+    /**
+     * Packed pixels, only the first size() * CHARACTER_PIXELS values are valid.
+     */
+    public float[] getData() {
+        return data;
+    }
+
+    public int getOffset(int index) {
+        return index * CHARACTER_PIXELS;
+    }
+
+    public float getInkRatio(int index) {
+        return inkRatios[index];
+    }
+
+    public Rect getBox(int index) {
+        int i = index * 4;
+        return new Rect(boxes[i], boxes[i + 1], boxes[i + 2], boxes[i + 3]);
+    }
+
+    /**
+     * Resizes a single channel 8 bit crop to 28x28 and appends it to the batch.
+     *
+     * @param crop character image
+     * @param box bounding box of the character to record alongside it
+     * @return index of the character in the batch
+     */
+    public int add(Mat crop, Rect box) {
+        Imgproc.resize(crop, resizedCharacter, characterSize);
+        resizedCharacter.get(0, 0, pixels);
+
+        return add(pixels, box);
+    }
+
+    /**
+     * Appends an already 28x28 character given as 8 bit pixels in row major order.
+     *
+     * @return index of the character in the batch
+     */
+    public int add(byte[] pixels, Rect box) {
+        ensureCapacity(count + 1);
+
+        int offset = count * CHARACTER_PIXELS;
+        float ink = 0.0f;
+        for (int i = 0; i < CHARACTER_PIXELS; i++) {
+            data[offset + i] = (pixels[i] & 0xFF) / 255.0f;
+            ink += data[offset + i];
+        }
+        inkRatios[count] = ink / CHARACTER_PIXELS;
+
+        int i = count * 4;
+        boxes[i] = box.x;
+        boxes[i + 1] = box.y;
+        boxes[i + 2] = box.width;
+        boxes[i + 3] = box.height;
+
+        return count++;
+    }
+
+    private void ensureCapacity(int required) {
+        if(required <= capacity())
+            return;
+
+        int capacity = Math.max(required, capacity() * 2);
+        float[] newData = new float[capacity * CHARACTER_PIXELS];
+        System.arraycopy(data, 0, newData, 0, count * CHARACTER_PIXELS);
+        data = newData;
+
+        int[] newBoxes = new int[capacity * 4];
+        System.arraycopy(boxes, 0, newBoxes, 0, count * 4);
+        boxes = newBoxes;
+
+        float[] newInkRatios = new float[capacity];
+        System.arraycopy(inkRatios, 0, newInkRatios, 0, count);
+        inkRatios = newInkRatios;
+    }
+
+    public void release() {
+        resizedCharacter.release();
+    }
+}
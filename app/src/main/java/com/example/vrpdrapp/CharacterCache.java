@@ -0,0 +1,132 @@
+package com.example.vrpdrapp;
+
+/**
+ * Bounded LRU cache of OCR results keyed by a 64 bit hash of the normalised 28x28 character, so the identical
+ * crops of a plate standing still in front of the camera are classified only once. Safe to share between OCR
+ * instances.
+ *
+ * Only identical characters hit: a Hamming tolerance on a perceptual hash (dHash) merged different characters,
+ * e.g. O/0, E/F and 1/I are within 4 bits of each other for common plate fonts once stretched to 28x28, while
+ * one pixel of crop jitter moves the hash of the same character by up to 14 bits.
+ */
+public class CharacterCache {
+
+    private int capacity;
+    private int topK;
+
+    private int size = 0;
+    private long clock = 0;
+    private long[] hashes;
+    private long[] lastUsed;
+    // capacity x topK
+    private int[] classes;
+    private float[] probabilities;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param topK candidates kept per character, the topK of the OcrResult the cache fills (see PlateReader.TOP_K)
+     */
+    public CharacterCache(int capacity, int topK) {
+        this.capacity = Math.max(1, capacity);
+        this.topK = Math.max(1, topK);
+
+        hashes = new long[this.capacity];
+        lastUsed = new long[this.capacity];
+        classes = new int[this.capacity * this.topK];
+        probabilities = new float[this.capacity * this.topK];
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the 8 bit pixels of a packed character.
+     */
+    public long hash(float[] data, int offset) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < CharacterBatch.CHARACTER_PIXELS; i++) {
+            hash ^= Math.round(data[offset + i] * 255.0f);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    /**
+     * Copies the cached scores of the character into the result.
+     *
+     * @return true on a cache hit
+     */
+    public synchronized boolean lookup(long hash, OcrResult result, int index) {
+        int best = -1;
+        for (int i = 0; i < size; i++) {
+            if(hashes[i] == hash) {
+                best = i;
+                break;
+            }
+        }
+
+        if(best < 0) {
+            ++misses;
+            return false;
+        }
+
+        ++hits;
+        lastUsed[best] = ++clock;
+        result.setTopK(index, classes, probabilities, best * topK, topK);
+
+        return true;
+    }
+
+    public synchronized void put(long hash, OcrResult result, int index) {
+        int slot = -1;
+        for (int i = 0; i < size; i++) {
+            if(hashes[i] == hash) {
+                slot = i;
+                break;
+            }
+        }
+
+        if(slot < 0) {
+            if(size < capacity) {
+                slot = size++;
+            } else {
+                slot = 0;
+                for (int i = 1; i < size; i++) {
+                    if(lastUsed[i] < lastUsed[slot]) {
+                        slot = i;
+                    }
+                }
+            }
+        }
+
+        hashes[slot] = hash;
+        lastUsed[slot] = ++clock;
+        int k = Math.min(topK, result.getTopK());
+        for (int rank = 0; rank < topK; rank++) {
+            classes[slot * topK + rank] = rank < k ? result.getClass(index, rank) : OcrResult.REJECTED;
+            probabilities[slot * topK + rank] = rank < k ? result.getProbability(index, rank) : 0.0f;
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized float getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0f : (float) hits / total;
+    }
+
+    public synchronized void resetStats() {
+        hits = 0;
+        misses = 0;
+    }
+
+    public synchronized void clear() {
+        size = 0;
+    }
+}
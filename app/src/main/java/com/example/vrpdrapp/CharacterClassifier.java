@@ -0,0 +1,30 @@
+package com.example.vrpdrapp;
+
+import org.opencv.core.Mat;
+
+import java.util.List;
+
+/**
+ * Classifies single characters into EMNISTNet.CLASS_LABELS.
+ */
+public interface CharacterClassifier {
+
+    String predict(Mat inputImage);
+
+    /**
+     * @return predicted label of each character, in batch order
+     */
+    String[] predictBatch(CharacterBatch batch);
+
+    String[] predictBatch(List<Mat> characters);
+
+    /**
+     * Classifies a batch keeping the top-k classes and probabilities of every character.
+     */
+    void predict(CharacterBatch batch, OcrResult result);
+
+    /**
+     * Runs the classifier on synthetic characters so the first real plate doesn't pay for lazy initialization.
+     */
+    void warmUp(int iterations);
+}
@@ -0,0 +1,22 @@
+package com.example.vrpdrapp;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.List;
+
+/**
+ * Strategy used by CharactersExtraction to find the characters on a binarized plate.
+ */
+public interface CharacterSegmenter {
+
+    /**
+     * Finds the character bounding boxes of a plate.
+     *
+     * @param image plate image (RGB)
+     * @param thresholdImg binarized plate, characters in white
+     * @param outputBoxes receives the character boxes sorted from left to right
+     * @return confidence of the segmentation in [0, 1]
+     */
+    float segment(Mat image, Mat thresholdImg, List<Rect> outputBoxes);
+}
@@ -3,7 +3,6 @@ package com.example.vrpdrapp;
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfPoint;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
@@ -17,176 +16,201 @@ public class CharactersExtraction {
 
     private static final String TAG = CharactersExtraction.class.getSimpleName();
 
-    private Mat finalProcessedImage;
+    private DebugSink debugSink;
 
     private Mat kernelDefault;
 
     private float minContourAreaRatio = 0.02f;
     private float maxContourAreaRatio = 0.1f;
 
+    // height (in pixels) every plate ROI is resampled to before segmentation, 0 keeps the source resolution
+    private int workingHeight = 0;
+
+    private List<Rect> characterBoxes = new ArrayList<>();
+
+    private WatershedSegmenter watershedSegmenter;
+    private CharacterSegmenter segmenter;
+    // segmentations less confident than this fall back to the watershed segmenter
+    private float minSegmentationConfidence = 0.5f;
+
     public CharactersExtraction(float minContourAreaRatio, float maxContourAreaRatio) {
         this.minContourAreaRatio = minContourAreaRatio;
         this.maxContourAreaRatio = maxContourAreaRatio;
 
         kernelDefault = buildStructuringElement(3, Imgproc.CV_SHAPE_CROSS);
+
+        watershedSegmenter = new WatershedSegmenter(minContourAreaRatio, maxContourAreaRatio);
+        segmenter = watershedSegmenter;
     }
 
-    public List<Mat> extract(Mat inputImage) {
-        Mat grayImg = new Mat(inputImage.height(), inputImage.width(), CvType.CV_8UC1);
-        Imgproc.cvtColor(inputImage, grayImg, Imgproc.COLOR_RGB2GRAY);
+    /**
+     * Replaces the segmentation strategy. Whenever it is less confident than minConfidence the watershed
+     * segmenter is used instead.
+     *
+     * @param segmenter segmentation strategy, null restores the watershed segmenter
+     * @param minConfidence minimum confidence required to accept the segmentation
+     */
+    public void setSegmenter(CharacterSegmenter segmenter, float minConfidence) {
+        this.segmenter = segmenter != null ? segmenter : watershedSegmenter;
+        this.minSegmentationConfidence = minConfidence;
+    }
 
-        Imgproc.morphologyEx(grayImg, grayImg, Imgproc.MORPH_BLACKHAT, kernelDefault);
+    /**
+     * Intermediate images are only produced while a sink is set.
+     *
+     * @param debugSink receives the pipeline stages, null disables the capture
+     */
+    public void setDebugSink(DebugSink debugSink) {
+        this.debugSink = debugSink;
+        watershedSegmenter.setDebugSink(debugSink);
+    }
 
-        Mat thresholdImg = new Mat(inputImage.height(), inputImage.width(), CvType.CV_8UC1);
-        Imgproc.threshold(grayImg, thresholdImg, 0,255,Imgproc.THRESH_BINARY+Imgproc.THRESH_OTSU);
+    public float getMinContourAreaRatio() {
+        return this.minContourAreaRatio;
+    }
 
-        Mat watershedImg = new Mat(inputImage.height(), inputImage.width(), CvType.CV_8UC1);
-        //skeletonMarkerBasedWatershed(inputImage, thresholdImg, watershedImg);
-        intersectionLinesMarkerBasedWatershedSegmentation(inputImage, thresholdImg, watershedImg);
+    public float getMaxContourAreaRatio() {
+        return this.maxContourAreaRatio;
+    }
 
-        Mat maskedImg = new Mat(inputImage.height(), inputImage.width(), CvType.CV_8UC1, Scalar.all(0));
-        extractBoxedContours(watershedImg, maskedImg);
-        Core.bitwise_and(maskedImg, thresholdImg, maskedImg);
-        // repeat procedure to refine extraction
-        List<Mat> chars = extractBoxedContours(maskedImg, maskedImg);
-        Core.bitwise_and(maskedImg, thresholdImg, maskedImg);
+    /**
+     * Enables resampling of each plate ROI to a fixed height (keeping aspect ratio) before segmentation,
+     * so segmentation cost no longer depends on how close the vehicle is.
+     *
+     * @param workingHeight target height in pixels, 0 disables the normalisation
+     */
+    public void setWorkingHeight(int workingHeight) {
+        this.workingHeight = Math.max(0, workingHeight);
+    }
 
-        if(finalProcessedImage != null)
-            finalProcessedImage.release();
+    public int getWorkingHeight() {
+        return this.workingHeight;
+    }
 
-        finalProcessedImage = maskedImg.clone();
+    /**
+     * Bounding boxes of the characters returned by the last call to extract(), in source ROI coordinates.
+     */
+    public List<Rect> getCharacterBoxes() {
+        return this.characterBoxes;
+    }
+
+    public List<Mat> extract(Mat sourceImage) {
+        List<Rect> boxes = new ArrayList<>();
+        Mat maskedImg = segmentCharacters(sourceImage, boxes);
+
+        List<Mat> chars = new ArrayList<>(boxes.size());
+        for (Rect box : boxes) {
+            chars.add(new Mat(maskedImg, box));
+        }
 
-        grayImg.release();
-        watershedImg.release();
-        thresholdImg.release();
         maskedImg.release();
 
         return chars;
     }
 
-    private Mat buildStructuringElement(int kernelSize, int elementType) {
-        Mat element = Imgproc.getStructuringElement(elementType,
-                new Size(2 * kernelSize + 1, 2 * kernelSize + 1),
-                new Point(kernelSize, kernelSize));
+    /**
+     * Extracts the characters of a plate straight into a packed batch, no per character Mat outlives the call
+     * so the crops do not keep the frame alive.
+     *
+     * @param sourceImage plate ROI
+     * @param batch receives the 28x28 characters and their boxes in source ROI coordinates
+     * @return number of characters appended to the batch
+     */
+    public int extract(Mat sourceImage, CharacterBatch batch) {
+        List<Rect> boxes = new ArrayList<>();
+        Mat maskedImg = segmentCharacters(sourceImage, boxes);
+
+        for (int i = 0; i < boxes.size(); i++) {
+            Mat character = maskedImg.submat(boxes.get(i));
+            batch.add(character, characterBoxes.get(i));
+            character.release();
+        }
 
-        return element;
-    }
+        maskedImg.release();
 
-    public Mat getFinalProcessedImage() {
-        return this.finalProcessedImage;
+        return boxes.size();
     }
 
-    private Mat skeletonize(Mat inputImage) {
-        Mat erodedImg = inputImage.clone();
-
-        Mat skeleton = new Mat(inputImage.height(), inputImage.width(), CvType.CV_8UC1, Scalar.all(0));
-        Mat openImg = new Mat(inputImage.height(), inputImage.width(), CvType.CV_8UC1);
-        Mat auxImg = new Mat(inputImage.height(), inputImage.width(), CvType.CV_8UC1);
-
-        while(true) {
-            Imgproc.morphologyEx(erodedImg, openImg, Imgproc.MORPH_OPEN, kernelDefault);
-            Core.subtract(erodedImg, openImg, auxImg);
-            Imgproc.morphologyEx(erodedImg, erodedImg, Imgproc.MORPH_ERODE, kernelDefault);
-            Core.bitwise_or(skeleton, auxImg, skeleton);
-
-            if(Core.countNonZero(erodedImg) == 0) {
-                break;
-            }
+    private Mat segmentCharacters(Mat sourceImage, List<Rect> boxes) {
+        double scale = 1.0;
+        Mat inputImage = sourceImage;
+        if(workingHeight > 0 && sourceImage.height() > 0 && sourceImage.height() != workingHeight) {
+            scale = (double) workingHeight / sourceImage.height();
+            int workingWidth = Math.max(1, (int) Math.round(sourceImage.width() * scale));
+            inputImage = new Mat();
+            Imgproc.resize(sourceImage, inputImage, new Size(workingWidth, workingHeight), 0, 0,
+                    scale < 1.0 ? Imgproc.INTER_AREA : Imgproc.INTER_LINEAR);
         }
 
-        erodedImg.release();
-        openImg.release();
-        auxImg.release();
-
-        return skeleton;
-    }
+        Mat grayImg = new Mat(inputImage.height(), inputImage.width(), CvType.CV_8UC1);
+        Imgproc.cvtColor(inputImage, grayImg, Imgproc.COLOR_RGB2GRAY);
+        if(debugSink != null)
+            debugSink.capture(DebugSink.STAGE_GRAYSCALE, grayImg);
 
-    private void skeletonMarkerBasedWatershed(Mat image, Mat preMarkerImg, Mat outputImg) {
-        Mat skeleton = skeletonize(preMarkerImg);
-        Imgproc.connectedComponents(skeleton, outputImg);
+        Imgproc.morphologyEx(grayImg, grayImg, Imgproc.MORPH_BLACKHAT, kernelDefault);
+        if(debugSink != null)
+            debugSink.capture(DebugSink.STAGE_BLACKHAT, grayImg);
 
-        skeleton.release();
+        Mat thresholdImg = new Mat(inputImage.height(), inputImage.width(), CvType.CV_8UC1);
+        Imgproc.threshold(grayImg, thresholdImg, 0,255,Imgproc.THRESH_BINARY+Imgproc.THRESH_OTSU);
+        if(debugSink != null)
+            debugSink.capture(DebugSink.STAGE_THRESHOLD, thresholdImg);
 
-        Imgproc.watershed(image, outputImg);
+        float confidence = segmenter.segment(inputImage, thresholdImg, boxes);
+        if(segmenter != watershedSegmenter && confidence < minSegmentationConfidence) {
+            boxes.clear();
+            watershedSegmenter.segment(inputImage, thresholdImg, boxes);
+        }
 
-        watershedToBw(outputImg);
-        outputImg.convertTo(outputImg, CvType.CV_8UC1);
-    }
+        Mat maskedImg = new Mat(inputImage.height(), inputImage.width(), CvType.CV_8UC1, Scalar.all(0));
+        fillBoxes(maskedImg, boxes);
+        Core.bitwise_and(maskedImg, thresholdImg, maskedImg);
 
-    private void intersectionLinesMarkerBasedWatershedSegmentation(Mat image, Mat preMarkerImg, Mat outputImg) {
-        Mat intersectionImg = new Mat(preMarkerImg.height(), preMarkerImg.width(), CvType.CV_8UC1, Scalar.all(0));
-        int h1 = preMarkerImg.height() / 2;
-        int h2 = h1 + preMarkerImg.height() / 4;
+        characterBoxes = toSourceCoordinates(boxes, scale, sourceImage.width(), sourceImage.height());
 
-        Imgproc.line(intersectionImg, new Point(0, h1), new Point(preMarkerImg.width(), h1), new Scalar(255), 3);
-        Imgproc.line(intersectionImg, new Point(0, h2), new Point(preMarkerImg.width(), h2), new Scalar(255), 3);
-        Core.bitwise_and(intersectionImg, preMarkerImg, intersectionImg);
+        if(debugSink != null)
+            debugSink.capture(DebugSink.STAGE_MASK, maskedImg);
 
-        Imgproc.connectedComponents(intersectionImg, outputImg);
+        grayImg.release();
+        thresholdImg.release();
 
-        Imgproc.watershed(image, outputImg);
+        if(inputImage != sourceImage)
+            inputImage.release();
 
-        watershedToBw(outputImg);
-        outputImg.convertTo(outputImg, CvType.CV_8UC1);
+        return maskedImg;
     }
 
-    private void watershedToBw(Mat image) {
-        int[] imgData = new int[(int) (image.total() * image.channels())];
-        int pixelValue;
-        image.get(0, 0, imgData);
-        for (int i = 0; i < image.rows(); i++) {
-            for (int j = 0; j < image.cols(); j++) {
-                pixelValue = imgData[(i * image.cols() + j)];
-                if(pixelValue == -1) {
-                    imgData[(i * image.cols() + j)] = 255;
-                } else if(pixelValue != 255) {
-                    imgData[(i * image.cols() + j)] = 0;
-                }
-            }
+    private void fillBoxes(Mat mask, List<Rect> boxes) {
+        for (Rect box : boxes) {
+            Imgproc.rectangle(mask,
+                    new Point(box.x, box.y),
+                    new Point(box.x + box.width, box.y + box.height),
+                    new Scalar(255),
+                    -1);
         }
-        image.put(0, 0, imgData);
-        return;
     }
 
-    private List<Mat> extractBoxedContours(Mat inputImage, Mat outputMask) {
-        List<MatOfPoint> contours = new ArrayList<>();
-        Mat hierarchy = new Mat();
-        Imgproc.findContours(inputImage, contours, hierarchy, Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_SIMPLE);
-        contours.sort((m1, m2) -> {
-            Rect rect1 = Imgproc.boundingRect(m1);
-            Rect rect2 = Imgproc.boundingRect(m2);
-
-            if (rect1.x > rect2.x) {
-                return 1;
-            } else if (rect1.x < rect2.x) {
-                return -1;
-            } else {
-                return 0;
-            }
-        });
-
-        List<Mat> result = new ArrayList<>();
-        float totalArea = inputImage.width() * inputImage.height();
-
-        for (MatOfPoint contour : contours) {
-            Rect contourBoundingBox = Imgproc.boundingRect(contour);
-            float roiArea = (float) contourBoundingBox.area();
-            float roiAreaRatio = roiArea / totalArea;
-
-            if(roiAreaRatio >= minContourAreaRatio && roiAreaRatio <= maxContourAreaRatio) {
-                Mat digit = new Mat(inputImage, contourBoundingBox);
-                result.add(digit);
-
-                if(outputMask != null) {
-                    Imgproc.rectangle(outputMask,
-                            new Point(contourBoundingBox.x, contourBoundingBox.y),
-                            new Point(contourBoundingBox.x + contourBoundingBox.width, contourBoundingBox.y + contourBoundingBox.height),
-                            new Scalar(255),
-                            -1);
-                }
-            }
+    private List<Rect> toSourceCoordinates(List<Rect> boxes, double scale, int sourceWidth, int sourceHeight) {
+        if(scale == 1.0)
+            return boxes;
+
+        List<Rect> sourceBoxes = new ArrayList<>(boxes.size());
+        for (Rect box : boxes) {
+            int x = (int) Math.floor(box.x / scale);
+            int y = (int) Math.floor(box.y / scale);
+            int x2 = Math.min(sourceWidth, (int) Math.ceil((box.x + box.width) / scale));
+            int y2 = Math.min(sourceHeight, (int) Math.ceil((box.y + box.height) / scale));
+            sourceBoxes.add(new Rect(x, y, Math.max(1, x2 - x), Math.max(1, y2 - y)));
         }
 
-        return result;
+        return sourceBoxes;
+    }
+
+    static Mat buildStructuringElement(int kernelSize, int elementType) {
+        Mat element = Imgproc.getStructuringElement(elementType,
+                new Size(2 * kernelSize + 1, 2 * kernelSize + 1),
+                new Point(kernelSize, kernelSize));
+
+        return element;
     }
 }
@@ -0,0 +1,79 @@
+package com.example.vrpdrapp;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares accuracy and latency of character classifiers on the same labelled character set.
+ */
+public class ClassifierBenchmark {
+
+    private static final String TAG = ClassifierBenchmark.class.getSimpleName();
+
+    public static class Result {
+        public final String name;
+        public final int samples;
+        public final float accuracy;
+        public final double msPerBatch;
+        public final double msPerCharacter;
+
+        Result(String name, int samples, float accuracy, double msPerBatch) {
+            this.name = name;
+            this.samples = samples;
+            this.accuracy = accuracy;
+            this.msPerBatch = msPerBatch;
+            this.msPerCharacter = samples > 0 ? msPerBatch / samples : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d samples, accuracy %.2f%%, %.3f ms/batch, %.3f ms/character",
+                    name, samples, 100 * accuracy, msPerBatch, msPerCharacter);
+        }
+    }
+
+    /**
+     * Classifies the whole sample batch runs times (after the same number of warm-up runs) and reports the
+     * accuracy against labels and the average latency.
+     *
+     * @param labels expected class index of each sample, see EMNISTNet.CLASS_LABELS
+     */
+    public static Result run(String name, CharacterClassifier classifier, CharacterBatch samples, int[] labels, int runs) {
+        runs = Math.max(1, runs);
+
+        String[] predictions = null;
+        for (int i = 0; i < runs; i++) {
+            predictions = classifier.predictBatch(samples);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            predictions = classifier.predictBatch(samples);
+        }
+        double msPerBatch = (System.nanoTime() - start) / 1e6 / runs;
+
+        int correct = 0;
+        for (int i = 0; i < samples.size(); i++) {
+            if(EMNISTNet.CLASS_LABELS[labels[i]].equals(predictions[i])) {
+                ++correct;
+            }
+        }
+        float accuracy = samples.size() > 0 ? (float) correct / samples.size() : 0.0f;
+
+        Result result = new Result(name, samples.size(), accuracy, msPerBatch);
+        Log.i(TAG, result.toString());
+
+        return result;
+    }
+
+    public static List<Result> compare(CharacterBatch samples, int[] labels, int runs, String[] names, CharacterClassifier... classifiers) {
+        List<Result> results = new ArrayList<>(classifiers.length);
+        for (int i = 0; i < classifiers.length; i++) {
+            results.add(run(names[i], classifiers[i], samples, labels, runs));
+        }
+
+        return results;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.vrpdrapp;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Two stage plate detection: a coarse pass of a small input network over the whole frame finds the plates,
+ * then a second network re-detects each of them on a crop of the full resolution frame around the coarse box.
+ * The refined boxes are tighter than the coarse ones, which is what CharactersExtraction needs, and both
+ * passes together cost less than one pass at the full input size.
+ *
+ * Each stage owns its network so the input shapes never change between calls (a shape change makes OpenCV
+ * reallocate the network).
+ */
+public class CoarseToFineDetector {
+
+    private Yolo coarse;
+    private Yolo fine;
+
+    // fraction of the coarse box added on each side of the refinement crop
+    private float expandX;
+    private float expandY;
+
+    // minimum overlap between a refined box and its coarse box
+    private static final float MIN_REFINED_IOU = 0.1f;
+
+    private long coarseNanos = 0;
+    private long fineNanos = 0;
+    private long frames = 0;
+    private long refined = 0;
+    private long unrefined = 0;
+
+    /**
+     * @param coarse detector with a small input (e.g. 320x192) for the whole frame
+     * @param fine detector with an input close to the size of the refinement crops
+     */
+    public CoarseToFineDetector(Yolo coarse, Yolo fine, float expandX, float expandY) {
+        this.coarse = coarse;
+        this.fine = fine;
+        this.expandX = expandX;
+        this.expandY = expandY;
+    }
+
+    /**
+     * @param region part of the frame to search, null for the whole frame
+     * @return refined plate boxes in frame coordinates
+     */
+    public List<Rect> detect(Mat frame, Rect region) {
+        long start = System.nanoTime();
+        List<Rect> candidates = region == null ? coarse.detect(frame, false) : coarse.detect(frame, region, false);
+        long coarseEnd = System.nanoTime();
+
+        List<Rect> boundingBoxes = new ArrayList<>(candidates.size());
+        for (Rect candidate : candidates) {
+            Rect crop = expand(candidate, frame);
+            if(crop.width <= 0 || crop.height <= 0)
+                continue;
+
+            Rect best = null;
+            float bestIoU = MIN_REFINED_IOU;
+            for (Rect box : fine.detect(frame, crop, false)) {
+                float iou = PlateTracker.iou(box, candidate);
+                if(iou >= bestIoU) {
+                    bestIoU = iou;
+                    best = box;
+                }
+            }
+
+            if(best != null) {
+                boundingBoxes.add(clip(best, frame));
+                ++refined;
+            } else {
+                boundingBoxes.add(clip(candidate, frame));
+                ++unrefined;
+            }
+        }
+
+        coarseNanos += coarseEnd - start;
+        fineNanos += System.nanoTime() - coarseEnd;
+        ++frames;
+
+        return boundingBoxes;
+    }
+
+    private Rect expand(Rect box, Mat frame) {
+        int dx = Math.round(box.width * expandX);
+        int dy = Math.round(box.height * expandY);
+        return clip(new Rect(box.x - dx, box.y - dy, box.width + 2 * dx, box.height + 2 * dy), frame);
+    }
+
+    private static Rect clip(Rect box, Mat frame) {
+        int x0 = Math.max(box.x, 0);
+        int y0 = Math.max(box.y, 0);
+        int x1 = Math.min(box.x + box.width, frame.cols());
+        int y1 = Math.min(box.y + box.height, frame.rows());
+        return new Rect(x0, y0, Math.max(x1 - x0, 0), Math.max(y1 - y0, 0));
+    }
+
+    public Yolo getCoarse() {
+        return coarse;
+    }
+
+    public Yolo getFine() {
+        return fine;
+    }
+
+    public double getAverageCoarseMillis() {
+        return frames == 0 ? 0.0 : coarseNanos / 1e6 / frames;
+    }
+
+    /**
+     * Average refinement time per frame, all candidates of the frame included.
+     */
+    public double getAverageFineMillis() {
+        return frames == 0 ? 0.0 : fineNanos / 1e6 / frames;
+    }
+
+    /**
+     * Fraction of the coarse boxes the second stage refined, the others are kept as detected.
+     */
+    public float getRefinedRatio() {
+        return refined + unrefined == 0 ? 0.0f : (float) refined / (refined + unrefined);
+    }
+}
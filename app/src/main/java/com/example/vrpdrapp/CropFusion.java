@@ -0,0 +1,230 @@
+package com.example.vrpdrapp;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Fuses the last crops of a tracked plate into one denoised crop for low light scenes, where single frames
+ * are too noisy to read.
+ *
+ * Crops are scaled to the size of the first crop of the track, registered to the most recent one by phase
+ * correlation and averaged. Crops that don't correlate (occlusion, motion blur) are left out. Each tracked
+ * plate uses one of maxTracks slots, the least recently used slot is taken over by new tracks.
+ */
+public class CropFusion {
+
+    // phase correlation peak below which a crop is not fused
+    private static final double MIN_RESPONSE = 0.1;
+
+    private int frames;
+    private int height;
+
+    private int[] owners;
+    private long[] lastUsed;
+    private long clock = 0;
+    private Size[] sizes;
+    private Mat[] windows;
+    private Mat[][] crops;
+    private Mat[][] grays;
+    private int[] counts;
+    private int[] nexts;
+    private int[] fresh;
+
+    private Mat gray = new Mat();
+    private Mat aligned = new Mat();
+    private Mat sum = new Mat();
+    private Mat fused = new Mat();
+    private Mat translation = new Mat(2, 3, CvType.CV_64F);
+    private double[] response = new double[1];
+
+    private long addNanos = 0;
+    private long fuseNanos = 0;
+    private long fuseCount = 0;
+    private long fusedCrops = 0;
+
+    /**
+     * @param frames crops fused together
+     * @param height height the crops are scaled to
+     * @param maxTracks tracks fused at the same time
+     */
+    public CropFusion(int frames, int height, int maxTracks) {
+        this.frames = Math.max(1, frames);
+        this.height = height;
+
+        owners = new int[maxTracks];
+        lastUsed = new long[maxTracks];
+        sizes = new Size[maxTracks];
+        windows = new Mat[maxTracks];
+        crops = new Mat[maxTracks][this.frames];
+        grays = new Mat[maxTracks][this.frames];
+        counts = new int[maxTracks];
+        nexts = new int[maxTracks];
+        fresh = new int[maxTracks];
+
+        for (int s = 0; s < maxTracks; s++) {
+            owners[s] = -1;
+            windows[s] = new Mat();
+            for (int i = 0; i < this.frames; i++) {
+                crops[s][i] = new Mat();
+                grays[s][i] = new Mat();
+            }
+        }
+    }
+
+    /**
+     * Stores the crop of a tracked plate.
+     *
+     * @param trackId id of the plate track
+     * @return true when frames new crops were stored since the last fusion of the track
+     */
+    public boolean add(int trackId, Mat frame, Rect box) {
+        long start = System.nanoTime();
+
+        int slot = slotOf(trackId);
+        if(sizes[slot] == null) {
+            int width = Math.max(1, Math.round((float) box.width * height / box.height));
+            sizes[slot] = new Size(width, height);
+            Imgproc.createHanningWindow(windows[slot], sizes[slot], CvType.CV_32F);
+        }
+
+        int index = nexts[slot];
+        Mat roi = new Mat(frame, box);
+        Imgproc.resize(roi, crops[slot][index], sizes[slot], 0, 0, Imgproc.INTER_AREA);
+        roi.release();
+        Imgproc.cvtColor(crops[slot][index], gray, Imgproc.COLOR_RGB2GRAY);
+        gray.convertTo(grays[slot][index], CvType.CV_32F);
+
+        nexts[slot] = (index + 1) % frames;
+        counts[slot] = Math.min(counts[slot] + 1, frames);
+        ++fresh[slot];
+
+        addNanos += System.nanoTime() - start;
+
+        return fresh[slot] >= frames;
+    }
+
+    /**
+     * Registers and averages the stored crops of a track.
+     *
+     * @return fused crop (RGB, reused by the next call), null when the track has no crops
+     */
+    public Mat fuse(int trackId) {
+        int slot = find(trackId);
+        if(slot < 0 || counts[slot] == 0)
+            return null;
+
+        long start = System.nanoTime();
+
+        Size size = sizes[slot];
+        int reference = (nexts[slot] - 1 + frames) % frames;
+        sum.create(size, CvType.CV_32FC3);
+        sum.setTo(Scalar.all(0));
+
+        int fusedCount = 0;
+        for (int i = 0; i < counts[slot]; i++) {
+            if(i == reference) {
+                Imgproc.accumulate(crops[slot][i], sum);
+                ++fusedCount;
+                continue;
+            }
+
+            Point shift = Imgproc.phaseCorrelate(grays[slot][reference], grays[slot][i], windows[slot], response);
+            if(response[0] < MIN_RESPONSE)
+                continue;
+
+            translation.put(0, 0, 1, 0, -shift.x, 0, 1, -shift.y);
+            Imgproc.warpAffine(crops[slot][i], aligned, translation, size, Imgproc.INTER_LINEAR, Core.BORDER_REPLICATE);
+            Imgproc.accumulate(aligned, sum);
+            ++fusedCount;
+        }
+
+        sum.convertTo(fused, CvType.CV_8UC3, 1.0 / fusedCount);
+        fresh[slot] = 0;
+
+        fuseNanos += System.nanoTime() - start;
+        ++fuseCount;
+        fusedCrops += fusedCount;
+
+        return fused;
+    }
+
+    private int find(int trackId) {
+        for (int s = 0; s < owners.length; s++) {
+            if(owners[s] == trackId) {
+                lastUsed[s] = ++clock;
+                return s;
+            }
+        }
+
+        return -1;
+    }
+
+    private int slotOf(int trackId) {
+        int slot = find(trackId);
+        if(slot >= 0)
+            return slot;
+
+        slot = 0;
+        for (int s = 1; s < owners.length; s++) {
+            if(lastUsed[s] < lastUsed[slot]) {
+                slot = s;
+            }
+        }
+
+        owners[slot] = trackId;
+        lastUsed[slot] = ++clock;
+        sizes[slot] = null;
+        counts[slot] = 0;
+        nexts[slot] = 0;
+        fresh[slot] = 0;
+
+        return slot;
+    }
+
+    /**
+     * Average cost of one fusion (registration and averaging) in milliseconds.
+     */
+    public double getAverageFuseMillis() {
+        return fuseCount == 0 ? 0.0 : fuseNanos / 1e6 / fuseCount;
+    }
+
+    /**
+     * Average cost of the stage per fused crop, storing the crops included, in milliseconds.
+     */
+    public double getAverageStageMillis() {
+        return fuseCount == 0 ? 0.0 : (addNanos + fuseNanos) / 1e6 / fuseCount;
+    }
+
+    public long getFuseCount() {
+        return fuseCount;
+    }
+
+    /**
+     * Average crops that made it into a fusion.
+     */
+    public double getAverageFusedCrops() {
+        return fuseCount == 0 ? 0.0 : (double) fusedCrops / fuseCount;
+    }
+
+    public void release() {
+        for (int s = 0; s < owners.length; s++) {
+            windows[s].release();
+            for (int i = 0; i < frames; i++) {
+                crops[s][i].release();
+                grays[s][i].release();
+            }
+        }
+
+        gray.release();
+        aligned.release();
+        sum.release();
+        fused.release();
+        translation.release();
+    }
+}
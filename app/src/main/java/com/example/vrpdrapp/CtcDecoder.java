@@ -0,0 +1,256 @@
+package com.example.vrpdrapp;
+
+/**
+ * Greedy and prefix beam search CTC decoding over primitive arrays. All buffers are allocated up front, so
+ * decoding creates no garbage. Not thread safe.
+ */
+public class CtcDecoder {
+
+    private int maxTimeSteps;
+    private int numClasses;
+    private int blankIndex;
+    private int beamWidth;
+    // classes less likely than this at a time step are not used to extend beams
+    private float pruneProbability = 1e-3f;
+
+    private float[] probabilities;
+
+    // beams: label sequence, probability of ending in blank and in non blank
+    private int[] beamLength;
+    private int[] beamLabels;
+    private long[] beamHash;
+    private float[] beamBlank;
+    private float[] beamNonBlank;
+    private int beamCount;
+
+    private int[] candidateLength;
+    private int[] candidateLabels;
+    private long[] candidateHash;
+    private float[] candidateBlank;
+    private float[] candidateNonBlank;
+    private int candidateCount;
+
+    private float lastConfidence;
+
+    public CtcDecoder(int maxTimeSteps, int numClasses, int blankIndex, int beamWidth) {
+        this.maxTimeSteps = maxTimeSteps;
+        this.numClasses = numClasses;
+        this.blankIndex = blankIndex;
+        this.beamWidth = Math.max(1, beamWidth);
+
+        probabilities = new float[numClasses];
+
+        beamLength = new int[this.beamWidth];
+        beamLabels = new int[this.beamWidth * maxTimeSteps];
+        beamHash = new long[this.beamWidth];
+        beamBlank = new float[this.beamWidth];
+        beamNonBlank = new float[this.beamWidth];
+
+        int maxCandidates = this.beamWidth * numClasses;
+        candidateLength = new int[maxCandidates];
+        candidateLabels = new int[maxCandidates * maxTimeSteps];
+        candidateHash = new long[maxCandidates];
+        candidateBlank = new float[maxCandidates];
+        candidateNonBlank = new float[maxCandidates];
+    }
+
+    public void setPruneProbability(float pruneProbability) {
+        this.pruneProbability = pruneProbability;
+    }
+
+    /**
+     * Best path decoding: most likely class at every time step, repeats collapsed and blanks removed.
+     *
+     * @param scores timeSteps x numClasses network output (logits or log probabilities)
+     * @param outputLabels receives the decoded class indices
+     * @return number of decoded labels
+     */
+    public int decodeGreedy(float[] scores, int offset, int timeSteps, int[] outputLabels) {
+        timeSteps = Math.min(timeSteps, maxTimeSteps);
+
+        int length = 0;
+        int previous = blankIndex;
+        double logConfidence = 0.0;
+        for (int t = 0; t < timeSteps; t++) {
+            softmax(scores, offset + t * numClasses);
+
+            int best = 0;
+            for (int c = 1; c < numClasses; c++) {
+                if(probabilities[c] > probabilities[best]) {
+                    best = c;
+                }
+            }
+            logConfidence += Math.log(Math.max(probabilities[best], 1e-12f));
+
+            if(best != blankIndex && best != previous && length < outputLabels.length) {
+                outputLabels[length++] = best;
+            }
+            previous = best;
+        }
+
+        lastConfidence = timeSteps > 0 ? (float) Math.exp(logConfidence / timeSteps) : 0.0f;
+
+        return length;
+    }
+
+    /**
+     * Prefix beam search decoding.
+     *
+     * @param scores timeSteps x numClasses network output (logits or log probabilities)
+     * @param outputLabels receives the decoded class indices
+     * @return number of decoded labels
+     */
+    public int decodeBeam(float[] scores, int offset, int timeSteps, int[] outputLabels) {
+        timeSteps = Math.min(timeSteps, maxTimeSteps);
+
+        beamCount = 1;
+        beamLength[0] = 0;
+        beamHash[0] = 0L;
+        beamBlank[0] = 1.0f;
+        beamNonBlank[0] = 0.0f;
+
+        for (int t = 0; t < timeSteps; t++) {
+            softmax(scores, offset + t * numClasses);
+            candidateCount = 0;
+
+            for (int b = 0; b < beamCount; b++) {
+                int length = beamLength[b];
+                int last = length > 0 ? beamLabels[b * maxTimeSteps + length - 1] : -1;
+                float total = beamBlank[b] + beamNonBlank[b];
+
+                // prefix stays the same by emitting a blank
+                int same = addCandidate(b, -1);
+                candidateBlank[same] += total * probabilities[blankIndex];
+
+                for (int c = 0; c < numClasses; c++) {
+                    if(c == blankIndex || probabilities[c] < pruneProbability)
+                        continue;
+
+                    if(c == last) {
+                        // a repeated label collapses unless separated by a blank
+                        candidateNonBlank[same] += beamNonBlank[b] * probabilities[c];
+                        if(length < maxTimeSteps) {
+                            int extended = addCandidate(b, c);
+                            candidateNonBlank[extended] += beamBlank[b] * probabilities[c];
+                        }
+                    } else if(length < maxTimeSteps) {
+                        int extended = addCandidate(b, c);
+                        candidateNonBlank[extended] += total * probabilities[c];
+                    }
+                }
+            }
+
+            selectBeams();
+        }
+
+        int best = 0;
+        float bestScore = beamBlank[0] + beamNonBlank[0];
+        float scoreSum = 0.0f;
+        for (int b = 0; b < beamCount; b++) {
+            float score = beamBlank[b] + beamNonBlank[b];
+            scoreSum += score;
+            if(score > bestScore) {
+                best = b;
+                bestScore = score;
+            }
+        }
+        lastConfidence = scoreSum > 0.0f ? bestScore / scoreSum : 0.0f;
+
+        int length = Math.min(beamLength[best], outputLabels.length);
+        System.arraycopy(beamLabels, best * maxTimeSteps, outputLabels, 0, length);
+
+        return length;
+    }
+
+    /**
+     * Confidence of the last decoded sequence: geometric mean of the best path probabilities for greedy
+     * decoding, share of the best beam among the final beams for beam search.
+     */
+    public float getLastConfidence() {
+        return lastConfidence;
+    }
+
+    private int addCandidate(int beam, int label) {
+        int length = beamLength[beam] + (label >= 0 ? 1 : 0);
+        long hash = label >= 0 ? beamHash[beam] * 31 + label + 1 : beamHash[beam];
+
+        for (int i = 0; i < candidateCount; i++) {
+            if(candidateHash[i] == hash && candidateLength[i] == length && sameLabels(beam, label, i)) {
+                return i;
+            }
+        }
+
+        int i = candidateCount++;
+        System.arraycopy(beamLabels, beam * maxTimeSteps, candidateLabels, i * maxTimeSteps, beamLength[beam]);
+        if(label >= 0) {
+            candidateLabels[i * maxTimeSteps + length - 1] = label;
+        }
+        candidateLength[i] = length;
+        candidateHash[i] = hash;
+        candidateBlank[i] = 0.0f;
+        candidateNonBlank[i] = 0.0f;
+
+        return i;
+    }
+
+    private boolean sameLabels(int beam, int label, int candidate) {
+        int beamOffset = beam * maxTimeSteps;
+        int candidateOffset = candidate * maxTimeSteps;
+        for (int i = 0; i < beamLength[beam]; i++) {
+            if(beamLabels[beamOffset + i] != candidateLabels[candidateOffset + i])
+                return false;
+        }
+
+        return label < 0 || candidateLabels[candidateOffset + beamLength[beam]] == label;
+    }
+
+    private void selectBeams() {
+        // partial selection sort of the best candidates, scores normalized to avoid underflow
+        int count = Math.min(beamWidth, candidateCount);
+        float norm = 0.0f;
+        for (int b = 0; b < count; b++) {
+            int best = -1;
+            float bestScore = -1.0f;
+            for (int i = 0; i < candidateCount; i++) {
+                float score = candidateBlank[i] + candidateNonBlank[i];
+                if(candidateLength[i] >= 0 && score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+
+            beamLength[b] = candidateLength[best];
+            System.arraycopy(candidateLabels, best * maxTimeSteps, beamLabels, b * maxTimeSteps, candidateLength[best]);
+            beamHash[b] = candidateHash[best];
+            beamBlank[b] = candidateBlank[best];
+            beamNonBlank[b] = candidateNonBlank[best];
+            norm += bestScore;
+
+            candidateLength[best] = -1;
+        }
+        beamCount = count;
+
+        if(norm > 0.0f) {
+            for (int b = 0; b < beamCount; b++) {
+                beamBlank[b] /= norm;
+                beamNonBlank[b] /= norm;
+            }
+        }
+    }
+
+    private void softmax(float[] scores, int offset) {
+        float maxScore = -Float.MAX_VALUE;
+        for (int c = 0; c < numClasses; c++) {
+            maxScore = Math.max(maxScore, scores[offset + c]);
+        }
+
+        float sum = 0.0f;
+        for (int c = 0; c < numClasses; c++) {
+            probabilities[c] = (float) Math.exp(scores[offset + c] - maxScore);
+            sum += probabilities[c];
+        }
+        for (int c = 0; c < numClasses; c++) {
+            probabilities[c] /= sum;
+        }
+    }
+}
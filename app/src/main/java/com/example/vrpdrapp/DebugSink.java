@@ -0,0 +1,18 @@
+package com.example.vrpdrapp;
+
+import org.opencv.core.Mat;
+
+/**
+ * Receives intermediate images of the processing pipeline. Images are only valid during the call,
+ * implementations must copy whatever they want to keep.
+ */
+public interface DebugSink {
+
+    String STAGE_GRAYSCALE = "grayscale";
+    String STAGE_BLACKHAT = "blackhat";
+    String STAGE_THRESHOLD = "threshold";
+    String STAGE_WATERSHED = "watershed";
+    String STAGE_MASK = "mask";
+
+    void capture(String stage, Mat image);
+}
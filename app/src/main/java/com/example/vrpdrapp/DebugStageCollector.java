@@ -0,0 +1,32 @@
+package com.example.vrpdrapp;
+
+import org.opencv.core.Mat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DebugSink that keeps a copy of the last image captured for each stage.
+ */
+public class DebugStageCollector implements DebugSink {
+
+    private Map<String, Mat> stages = new LinkedHashMap<>();
+
+    @Override
+    public void capture(String stage, Mat image) {
+        Mat previous = stages.put(stage, image.clone());
+        if(previous != null)
+            previous.release();
+    }
+
+    public Mat get(String stage) {
+        return stages.get(stage);
+    }
+
+    public void clear() {
+        for (Mat image : stages.values()) {
+            image.release();
+        }
+        stages.clear();
+    }
+}
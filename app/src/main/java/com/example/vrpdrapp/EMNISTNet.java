@@ -5,19 +5,18 @@ import android.util.Log;
 
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 import org.pytorch.IValue;
 import org.pytorch.Module;
 import org.pytorch.Tensor;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.FloatBuffer;
+import java.util.List;
 
-public class EMNISTNet {
+public class EMNISTNet implements CharacterClassifier {
 
     public static String[] CLASS_LABELS = new String[] {
             "0","1","2","3","4","5","6","7","8","9",
@@ -26,9 +25,37 @@ public class EMNISTNet {
 
     private static final String TAG = EMNISTNet.class.getSimpleName();
 
+    public static final int DEFAULT_MAX_BATCH_SIZE = 32;
+
     private Module module = null;
 
+    private int maxBatchSize;
+
+    // direct input buffer shared by the input tensors of every batch size, characters are written straight into it
+    private FloatBuffer inputBuffer;
+    private Tensor[] inputTensors;
+
+    private Mat resizedImage = new Mat(CharacterBatch.CHARACTER_SIZE, CharacterBatch.CHARACTER_SIZE, CvType.CV_8UC1);
+    private Size inputSize = new Size(CharacterBatch.CHARACTER_SIZE, CharacterBatch.CHARACTER_SIZE);
+    private byte[] pixels = new byte[CharacterBatch.CHARACTER_PIXELS];
+
+    private int[] predictedClasses;
+
+    // crops with less or more ink than this are rejected without running the classifier
+    private float minInkRatio = 0.02f;
+    private float maxInkRatio = 0.95f;
+    private int[] rowIndex;
+    private long[] rowHash;
+
+    private CharacterCache cache;
+    private float[] distribution = new float[CLASS_LABELS.length];
+    private CharacterBatch listBatch = new CharacterBatch(16);
+
     public EMNISTNet(Context context, String moduleName) {
+        this(context, moduleName, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public EMNISTNet(Context context, String moduleName, int maxBatchSize) {
         Log.i(TAG, "Loading EMNISTNet... ");
 
         try {
@@ -36,48 +63,210 @@ public class EMNISTNet {
         } catch (IOException e) {
             Log.e(TAG, "Error reading asset: Failed to load pytorch module from "+moduleName);
         }
+
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.inputBuffer = Tensor.allocateFloatBuffer(this.maxBatchSize * CharacterBatch.CHARACTER_PIXELS);
+        this.inputTensors = new Tensor[this.maxBatchSize + 1];
+        this.predictedClasses = new int[this.maxBatchSize];
+        this.rowIndex = new int[this.maxBatchSize];
+        this.rowHash = new long[this.maxBatchSize];
     }
 
+    /**
+     * Puts a result cache in front of the classifier for predict(CharacterBatch, OcrResult).
+     *
+     * @param cache character cache, null disables caching
+     */
+    public void setCache(CharacterCache cache) {
+        this.cache = cache;
+    }
+
+    public CharacterCache getCache() {
+        return cache;
+    }
+
+    public void setRejectThresholds(float minInkRatio, float maxInkRatio) {
+        this.minInkRatio = minInkRatio;
+        this.maxInkRatio = maxInkRatio;
+    }
+
+    @Override
     public String predict(Mat inputImage) {
-        Mat image = new Mat(28, 28, CvType.CV_8UC1);
-        Imgproc.resize(inputImage, image, new Size(28, 28)); // resize image to 28x28
+        Imgproc.resize(inputImage, resizedImage, inputSize); // resize image to 28x28
+        resizedImage.get(0, 0, pixels);
+
+        inputBuffer.clear();
+        for (int i = 0; i < CharacterBatch.CHARACTER_PIXELS; i++) {
+            inputBuffer.put((pixels[i] & 0xFF) / 255.0f); // float32 with 1 single channel
+        }
+
+        forward(1, predictedClasses, 0);
+
+        return CLASS_LABELS[predictedClasses[0]];
+    }
+
+    /**
+     * Classifies every character of a packed batch with one N x 1 x 28 x 28 forward pass per maxBatchSize
+     * characters.
+     *
+     * @return predicted label of each character, in batch order
+     */
+    @Override
+    public String[] predictBatch(CharacterBatch batch) {
+        String[] labels = new String[batch.size()];
+        int[] classes = batch.size() <= predictedClasses.length ? predictedClasses : new int[batch.size()];
+
+        predictClasses(batch, classes);
+
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = CLASS_LABELS[classes[i]];
+        }
+
+        return labels;
+    }
+
+    /**
+     * Allocation free variant of predictBatch.
+     *
+     * @param outputClasses receives the class index of each character, must hold at least batch.size() values
+     */
+    public void predictClasses(CharacterBatch batch, int[] outputClasses) {
+        for (int start = 0; start < batch.size(); start += maxBatchSize) {
+            int n = Math.min(maxBatchSize, batch.size() - start);
+
+            inputBuffer.clear();
+            inputBuffer.put(batch.getData(), batch.getOffset(start), n * CharacterBatch.CHARACTER_PIXELS);
+
+            forward(n, outputClasses, start);
+        }
+    }
 
-        image.convertTo(image, CvType.CV_32FC1, 1.0/255.0); // convert to type float32 with 1 single channel
+    /**
+     * Classifies a batch keeping the top-k classes and softmax probabilities of every character. Crops whose ink
+     * ratio is out of the reject thresholds are marked as rejected and never reach the network.
+     */
+    @Override
+    public void predict(CharacterBatch batch, OcrResult result) {
+        result.reset(batch.size());
 
-        long[] shape = new long[4]; // expected input shape: 1x1x28x28
-        shape[0] = 1;
-        shape[1] = 1;
-        shape[2] = image.width();
-        shape[3] = image.height();
+        int n = 0;
+        inputBuffer.clear();
+        for (int i = 0; i < batch.size(); i++) {
+            float ink = batch.getInkRatio(i);
+            if(ink < minInkRatio || ink > maxInkRatio) {
+                result.reject(i);
+                continue;
+            }
 
-        float[] imageData = matToFloatArray(image);
+            if(cache != null) {
+                rowHash[n] = cache.hash(batch.getData(), batch.getOffset(i));
+                if(cache.lookup(rowHash[n], result, i))
+                    continue;
+            }
 
-        final Tensor inputTensor = Tensor.fromBlob(imageData, shape);
+            inputBuffer.put(batch.getData(), batch.getOffset(i), CharacterBatch.CHARACTER_PIXELS);
+            rowIndex[n++] = i;
 
-        final Tensor outputTensor = module.forward(IValue.from(inputTensor)).toTensor();
+            if(n == maxBatchSize) {
+                forward(n, result);
+                n = 0;
+                inputBuffer.clear();
+            }
+        }
 
-        final float[] scores = outputTensor.getDataAsFloatArray();
+        if(n > 0)
+            forward(n, result);
+    }
 
-        int maxScoreIdx = findMaxScoreIdx(scores);
+    /**
+     * Classifies a list of character images with a single forward pass.
+     */
+    @Override
+    public String[] predictBatch(List<Mat> characters) {
+        listBatch.clear();
+        for (Mat character : characters) {
+            listBatch.add(character, new Rect(0, 0, character.width(), character.height()));
+        }
 
-        String className = CLASS_LABELS[maxScoreIdx];
+        return predictBatch(listBatch);
+    }
 
-        return  className;
+    @Override
+    public void warmUp(int iterations) {
+        // single characters and a typical plate
+        int[] batchSizes = new int[] {1, Math.min(8, maxBatchSize)};
+        for (int n : batchSizes) {
+            for (int i = 0; i < iterations; i++) {
+                inputBuffer.clear();
+                for (int j = 0; j < n * CharacterBatch.CHARACTER_PIXELS; j++) {
+                    inputBuffer.put(0.0f);
+                }
+                forward(n);
+            }
+        }
     }
 
-    private float[] matToFloatArray(Mat image) {
-        float[] data = new float[(int)(image.total()*image.channels())];
-        image.get(0,0, data);
+    private void forward(int n, int[] outputClasses, int outputOffset) {
+        final float[] scores = forward(n);
 
-        return data;
+        int numClasses = scores.length / n;
+        for (int i = 0; i < n; i++) {
+            outputClasses[outputOffset + i] = findMaxScoreIdx(scores, i * numClasses, numClasses);
+        }
     }
 
-    private int findMaxScoreIdx(float[] scores) {
+    private void forward(int n, OcrResult result) {
+        final float[] scores = forward(n);
+
+        int numClasses = Math.min(scores.length / n, distribution.length);
+        for (int i = 0; i < n; i++) {
+            softmax(scores, i * (scores.length / n), numClasses, distribution);
+            result.set(rowIndex[i], distribution, numClasses);
+
+            if(cache != null)
+                cache.put(rowHash[i], result, rowIndex[i]);
+        }
+    }
+
+    private float[] forward(int n) {
+        final Tensor outputTensor = module.forward(IValue.from(inputTensor(n))).toTensor();
+
+        return outputTensor.getDataAsFloatArray();
+    }
+
+    private void softmax(float[] scores, int offset, int length, float[] output) {
+        float maxScore = scores[offset + findMaxScoreIdx(scores, offset, length)];
+        float sum = 0.0f;
+        for (int i = 0; i < length; i++) {
+            output[i] = (float) Math.exp(scores[offset + i] - maxScore);
+            sum += output[i];
+        }
+        for (int i = 0; i < length; i++) {
+            output[i] /= sum;
+        }
+    }
+
+    private Tensor inputTensor(int n) {
+        if(inputTensors[n] == null) {
+            // tensors need a buffer of exactly their size, so each batch size gets a view over the shared buffer
+            inputBuffer.clear();
+            inputBuffer.limit(n * CharacterBatch.CHARACTER_PIXELS);
+            FloatBuffer view = inputBuffer.slice();
+            inputBuffer.clear();
+
+            inputTensors[n] = Tensor.fromBlob(view,
+                    new long[] {n, 1, CharacterBatch.CHARACTER_SIZE, CharacterBatch.CHARACTER_SIZE});
+        }
+
+        return inputTensors[n];
+    }
+
+    private int findMaxScoreIdx(float[] scores, int offset, int length) {
         float maxScore = -Float.MAX_VALUE;
         int maxScoreIdx = -1;
-        for (int i = 0; i < scores.length; i++) {
-            if (scores[i] > maxScore) {
-                maxScore = scores[i];
+        for (int i = 0; i < length; i++) {
+            if (scores[offset + i] > maxScore) {
+                maxScore = scores[offset + i];
                 maxScoreIdx = i;
             }
         }
@@ -86,26 +275,11 @@ public class EMNISTNet {
     }
 
     /**
-     * Copies specified asset to the file in /files app directory and returns this file absolute path.
+     * Copies specified asset to the model cache (once per app version) and returns the cached file absolute path.
      *
      * @return absolute file path
      */
     public static String getAssetFilePath(Context context, String assetName) throws IOException {
-        File file = new File(context.getFilesDir(), assetName);
-        if (file.exists() && file.length() > 0) {
-            return file.getAbsolutePath();
-        }
-
-        try (InputStream is = context.getAssets().open(assetName)) {
-            try (OutputStream os = new FileOutputStream(file)) {
-                byte[] buffer = new byte[4 * 1024];
-                int read;
-                while ((read = is.read(buffer)) != -1) {
-                    os.write(buffer, 0, read);
-                }
-                os.flush();
-            }
-            return file.getAbsolutePath();
-        }
+        return ModelCache.getInstance(context).getPath(assetName);
     }
 }
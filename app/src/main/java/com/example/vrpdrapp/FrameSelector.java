@@ -0,0 +1,80 @@
+package com.example.vrpdrapp;
+
+/**
+ * Picks the frames of a tracked plate worth reading: a frame is read when its quality ranks among the best
+ * readsPerWindow of the last window frames and fewer than readsPerWindow frames were read in that window.
+ */
+public class FrameSelector {
+
+    private int window;
+    private int readsPerWindow;
+    private float minQuality;
+
+    // ring of the last window frames
+    private float[] qualities;
+    private boolean[] read;
+    private int count = 0;
+    private int next = 0;
+
+    private long offered = 0;
+    private long selected = 0;
+
+    /**
+     * @param window frames of the sliding window
+     * @param readsPerWindow frames read at most in the window
+     * @param minQuality frames scoring below it are never read
+     */
+    public FrameSelector(int window, int readsPerWindow, float minQuality) {
+        this.window = Math.max(1, window);
+        this.readsPerWindow = Math.max(1, readsPerWindow);
+        this.minQuality = minQuality;
+
+        qualities = new float[this.window];
+        read = new boolean[this.window];
+    }
+
+    /**
+     * Records the quality of the plate in a new frame.
+     *
+     * @return true when this frame should be read
+     */
+    public boolean offer(float quality) {
+        int better = 0;
+        int reads = 0;
+        // the oldest frame leaves the window when this one is added
+        int oldest = count == window ? next : -1;
+        for (int i = 0; i < count; i++) {
+            if(i == oldest)
+                continue;
+
+            if(qualities[i] > quality) {
+                ++better;
+            }
+            if(read[i]) {
+                ++reads;
+            }
+        }
+
+        boolean selectFrame = quality >= minQuality && better < readsPerWindow && reads < readsPerWindow;
+
+        qualities[next] = quality;
+        read[next] = selectFrame;
+        next = (next + 1) % window;
+        count = Math.min(count + 1, window);
+
+        ++offered;
+        if(selectFrame) {
+            ++selected;
+        }
+
+        return selectFrame;
+    }
+
+    public long getOffered() {
+        return offered;
+    }
+
+    public long getSelected() {
+        return selected;
+    }
+}
@@ -0,0 +1,316 @@
+package com.example.vrpdrapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.ml.KNearest;
+import org.opencv.ml.Ml;
+import org.opencv.ml.SVM;
+import org.opencv.objdetect.HOGDescriptor;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Lightweight alternative to EMNISTNet for low end devices: HOG features of the 28x28 character classified by a
+ * serialized OpenCV SVM or by a KNearest model trained at load time from labelled samples.
+ *
+ * Samples files hold a big endian int with the number of samples followed, for each sample, by one byte with
+ * the index of its label in EMNISTNet.CLASS_LABELS and its 28x28 8 bit pixels in row major order.
+ */
+public class HogCharacterClassifier implements CharacterClassifier {
+
+    private static final String TAG = HogCharacterClassifier.class.getSimpleName();
+
+    // SVM parameters of the OpenCV HOG digits sample
+    private static final double SVM_C = 12.5;
+    private static final double SVM_GAMMA = 0.50625;
+
+    private HOGDescriptor hog;
+
+    private SVM svm;
+    private KNearest knn;
+    private int k = 1;
+
+    // crops with less or more ink than this are rejected without running the classifier
+    private float minInkRatio = 0.02f;
+    private float maxInkRatio = 0.95f;
+
+    private Mat characterImage = new Mat(CharacterBatch.CHARACTER_SIZE, CharacterBatch.CHARACTER_SIZE, CvType.CV_8UC1);
+    private MatOfFloat descriptor = new MatOfFloat();
+    private Mat samples = new Mat();
+    private Mat results = new Mat();
+    private Mat neighbours = new Mat();
+
+    private byte[] pixels = new byte[CharacterBatch.CHARACTER_PIXELS];
+    private float[] descriptorData;
+    private float[] responses = new float[0];
+    private float[] distribution = new float[EMNISTNet.CLASS_LABELS.length];
+    private int[] rowIndex = new int[16];
+
+    private OcrResult batchResult = new OcrResult(16, 1);
+    private CharacterBatch listBatch = new CharacterBatch(16);
+
+    private HogCharacterClassifier() {
+        hog = new HOGDescriptor(new Size(28, 28), new Size(14, 14), new Size(7, 7), new Size(7, 7), 9);
+        descriptorData = new float[(int) hog.getDescriptorSize()];
+    }
+
+    /**
+     * Loads a serialized SVM trained on the HOG features of the characters, responses being class indices.
+     */
+    public static HogCharacterClassifier loadSvm(Context context, String modelName) throws IOException {
+        Log.i(TAG, "Loading HOG + SVM character classifier...");
+
+        HogCharacterClassifier classifier = new HogCharacterClassifier();
+        classifier.svm = SVM.load(EMNISTNet.getAssetFilePath(context, modelName));
+
+        return classifier;
+    }
+
+    /**
+     * Trains a KNearest model from a labelled samples asset.
+     */
+    public static HogCharacterClassifier loadKNearest(Context context, String samplesName, int k) throws IOException {
+        Log.i(TAG, "Loading HOG + KNearest character classifier...");
+
+        CharacterBatch batch = new CharacterBatch(256);
+        int[] labels;
+        try (InputStream is = context.getAssets().open(samplesName)) {
+            labels = readSamples(is, batch);
+        }
+
+        HogCharacterClassifier classifier = trainKNearest(batch, labels, k);
+        batch.release();
+
+        return classifier;
+    }
+
+    public static HogCharacterClassifier trainKNearest(CharacterBatch batch, int[] labels, int k) {
+        HogCharacterClassifier classifier = new HogCharacterClassifier();
+        classifier.k = Math.max(1, k);
+
+        Mat trainResponses = classifier.prepareTraining(batch, labels);
+        classifier.knn = KNearest.create();
+        classifier.knn.train(classifier.samples, Ml.ROW_SAMPLE, trainResponses);
+        trainResponses.release();
+
+        return classifier;
+    }
+
+    /**
+     * Trains an RBF SVM on the HOG features of labelled samples, see save() to produce the model asset loadSvm()
+     * expects.
+     */
+    public static HogCharacterClassifier trainSvm(CharacterBatch batch, int[] labels) {
+        HogCharacterClassifier classifier = new HogCharacterClassifier();
+
+        Mat trainResponses = classifier.prepareTraining(batch, labels);
+        trainResponses.convertTo(trainResponses, CvType.CV_32SC1);
+        classifier.svm = SVM.create();
+        classifier.svm.setType(SVM.C_SVC);
+        classifier.svm.setKernel(SVM.RBF);
+        classifier.svm.setC(SVM_C);
+        classifier.svm.setGamma(SVM_GAMMA);
+        classifier.svm.train(classifier.samples, Ml.ROW_SAMPLE, trainResponses);
+        trainResponses.release();
+
+        return classifier;
+    }
+
+    /**
+     * Writes the trained SVM to a file, e.g. to be shipped as the hog_svm_characters.yml asset.
+     */
+    public void save(String path) {
+        if(svm == null)
+            throw new IllegalStateException("Only SVM classifiers can be saved");
+
+        svm.save(path);
+    }
+
+    // descriptors of every sample in samples, the labels as a column of responses
+    private Mat prepareTraining(CharacterBatch batch, int[] labels) {
+        int[] rows = new int[batch.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        computeDescriptors(batch, rows, rows.length);
+
+        Mat trainResponses = new Mat(labels.length, 1, CvType.CV_32FC1);
+        float[] labelData = new float[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            labelData[i] = labels[i];
+        }
+        trainResponses.put(0, 0, labelData);
+
+        return trainResponses;
+    }
+
+    /**
+     * Reads labelled 28x28 samples into a batch.
+     *
+     * @return label (class index) of each sample, in batch order
+     */
+    public static int[] readSamples(InputStream input, CharacterBatch batch) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(input));
+        int count = data.readInt();
+
+        int[] labels = new int[count];
+        byte[] pixels = new byte[CharacterBatch.CHARACTER_PIXELS];
+        Rect box = new Rect(0, 0, CharacterBatch.CHARACTER_SIZE, CharacterBatch.CHARACTER_SIZE);
+        for (int i = 0; i < count; i++) {
+            labels[i] = data.readUnsignedByte();
+            data.readFully(pixels);
+            batch.add(pixels, box);
+        }
+
+        return labels;
+    }
+
+    public void setRejectThresholds(float minInkRatio, float maxInkRatio) {
+        this.minInkRatio = minInkRatio;
+        this.maxInkRatio = maxInkRatio;
+    }
+
+    @Override
+    public String predict(Mat inputImage) {
+        listBatch.clear();
+        listBatch.add(inputImage, new Rect(0, 0, inputImage.width(), inputImage.height()));
+
+        return predictBatch(listBatch)[0];
+    }
+
+    @Override
+    public String[] predictBatch(CharacterBatch batch) {
+        batchResult.reset(batch.size());
+
+        ensureRowCapacity(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            rowIndex[i] = i;
+        }
+        classify(batch, batch.size(), batchResult);
+
+        String[] labels = new String[batch.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = EMNISTNet.CLASS_LABELS[batchResult.getClass(i, 0)];
+        }
+
+        return labels;
+    }
+
+    @Override
+    public String[] predictBatch(List<Mat> characters) {
+        listBatch.clear();
+        for (Mat character : characters) {
+            listBatch.add(character, new Rect(0, 0, character.width(), character.height()));
+        }
+
+        return predictBatch(listBatch);
+    }
+
+    @Override
+    public void predict(CharacterBatch batch, OcrResult result) {
+        result.reset(batch.size());
+
+        ensureRowCapacity(batch.size());
+        int n = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            float ink = batch.getInkRatio(i);
+            if(ink < minInkRatio || ink > maxInkRatio) {
+                result.reject(i);
+                continue;
+            }
+            rowIndex[n++] = i;
+        }
+
+        classify(batch, n, result);
+    }
+
+    @Override
+    public void warmUp(int iterations) {
+        byte[] blank = new byte[CharacterBatch.CHARACTER_PIXELS];
+        Rect box = new Rect(0, 0, CharacterBatch.CHARACTER_SIZE, CharacterBatch.CHARACTER_SIZE);
+
+        listBatch.clear();
+        for (int i = 0; i < 8; i++) {
+            listBatch.add(blank, box);
+        }
+
+        for (int i = 0; i < iterations; i++) {
+            predictBatch(listBatch);
+        }
+    }
+
+    private void classify(CharacterBatch batch, int n, OcrResult result) {
+        if(n == 0)
+            return;
+
+        computeDescriptors(batch, rowIndex, n);
+
+        if(knn != null) {
+            knn.findNearest(samples, k, results, neighbours);
+            if(responses.length < n * k) {
+                responses = new float[n * k];
+            }
+            neighbours.get(0, 0, responses);
+
+            for (int i = 0; i < n; i++) {
+                clearDistribution();
+                for (int j = 0; j < k; j++) {
+                    distribution[(int) responses[i * k + j]] += 1.0f / k;
+                }
+                result.set(rowIndex[i], distribution, distribution.length);
+            }
+        } else {
+            // the SVM only gives the winning class
+            svm.predict(samples, results, 0);
+            if(responses.length < n) {
+                responses = new float[n];
+            }
+            results.get(0, 0, responses);
+
+            for (int i = 0; i < n; i++) {
+                clearDistribution();
+                distribution[(int) responses[i]] = 1.0f;
+                result.set(rowIndex[i], distribution, distribution.length);
+            }
+        }
+    }
+
+    private void computeDescriptors(CharacterBatch batch, int[] rows, int n) {
+        samples.create(n, descriptorData.length, CvType.CV_32FC1);
+
+        float[] data = batch.getData();
+        for (int r = 0; r < n; r++) {
+            int offset = batch.getOffset(rows[r]);
+            for (int i = 0; i < CharacterBatch.CHARACTER_PIXELS; i++) {
+                pixels[i] = (byte) Math.round(data[offset + i] * 255.0f);
+            }
+            characterImage.put(0, 0, pixels);
+
+            hog.compute(characterImage, descriptor);
+            descriptor.get(0, 0, descriptorData);
+            samples.put(r, 0, descriptorData);
+        }
+    }
+
+    private void clearDistribution() {
+        for (int i = 0; i < distribution.length; i++) {
+            distribution[i] = 0.0f;
+        }
+    }
+
+    private void ensureRowCapacity(int rows) {
+        if(rowIndex.length < rows) {
+            rowIndex = new int[rows];
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.vrpdrapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Polygons of a fixed camera's view where plates are read, e.g. the lanes in front of a gate. Detection runs
+ * on the bounding region of the polygons only and plates whose centre is outside all of them are dropped.
+ *
+ * Vertices are fractions of the frame size, so a mask holds for any preview resolution. Masks are stored per
+ * camera in SharedPreferences as "x,y x,y x,y;x,y ..." (polygons separated by ';').
+ */
+public class LaneMask {
+
+    private static final String TAG = LaneMask.class.getSimpleName();
+
+    private static final String PREFERENCES_NAME = "lane_masks";
+
+    // x0, y0, x1, y1, ... of each polygon
+    private List<float[]> polygons = new ArrayList<>();
+
+    /**
+     * Loads the mask of a camera, empty when none was saved.
+     */
+    public static LaneMask load(Context context, String cameraId) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        String value = preferences.getString(cameraId, null);
+        try {
+            return parse(value);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid lane mask for camera "+cameraId+": "+value);
+            return new LaneMask();
+        }
+    }
+
+    /**
+     * Parses a mask in the stored format, empty for a null or empty value.
+     */
+    public static LaneMask parse(String value) {
+        LaneMask mask = new LaneMask();
+        if(value == null || value.trim().isEmpty())
+            return mask;
+
+        for (String polygon : value.split(";")) {
+            String[] vertices = polygon.trim().split(" +");
+            float[] points = new float[2 * vertices.length];
+            for (int i = 0; i < vertices.length; i++) {
+                String[] coordinates = vertices[i].split(",");
+                if(coordinates.length != 2)
+                    throw new IllegalArgumentException("Invalid vertex "+vertices[i]);
+                points[2 * i] = Float.parseFloat(coordinates[0]);
+                points[2 * i + 1] = Float.parseFloat(coordinates[1]);
+            }
+            mask.addPolygon(points);
+        }
+
+        return mask;
+    }
+
+    public void save(Context context, String cameraId) {
+        StringBuilder value = new StringBuilder();
+        for (float[] polygon : polygons) {
+            if(value.length() > 0) {
+                value.append(';');
+            }
+            for (int i = 0; i < polygon.length; i += 2) {
+                if(i > 0) {
+                    value.append(' ');
+                }
+                value.append(polygon[i]).append(',').append(polygon[i + 1]);
+            }
+        }
+
+        context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE).edit()
+                .putString(cameraId, value.toString())
+                .apply();
+    }
+
+    /**
+     * @param points x0, y0, x1, y1, ... as fractions of the frame size, at least 3 vertices
+     */
+    public void addPolygon(float[] points) {
+        if(points.length < 6 || points.length % 2 != 0)
+            throw new IllegalArgumentException("A polygon needs at least 3 (x, y) vertices");
+
+        polygons.add(points.clone());
+    }
+
+    public void clear() {
+        polygons.clear();
+    }
+
+    /**
+     * True when there are no polygons, the whole frame is used.
+     */
+    public boolean isEmpty() {
+        return polygons.isEmpty();
+    }
+
+    /**
+     * Bounding box of all polygons in pixels of a width x height frame, the whole frame when empty.
+     */
+    public Rect getBoundingRegion(int width, int height) {
+        if(polygons.isEmpty())
+            return new Rect(0, 0, width, height);
+
+        float minX = 1.0f;
+        float minY = 1.0f;
+        float maxX = 0.0f;
+        float maxY = 0.0f;
+        for (float[] polygon : polygons) {
+            for (int i = 0; i < polygon.length; i += 2) {
+                minX = Math.min(minX, polygon[i]);
+                minY = Math.min(minY, polygon[i + 1]);
+                maxX = Math.max(maxX, polygon[i]);
+                maxY = Math.max(maxY, polygon[i + 1]);
+            }
+        }
+
+        int x0 = Math.max(0, (int) Math.floor(minX * width));
+        int y0 = Math.max(0, (int) Math.floor(minY * height));
+        int x1 = Math.min(width, (int) Math.ceil(maxX * width));
+        int y1 = Math.min(height, (int) Math.ceil(maxY * height));
+        return new Rect(x0, y0, Math.max(x1 - x0, 0), Math.max(y1 - y0, 0));
+    }
+
+    /**
+     * True when the centre of a box of a width x height frame is inside one of the polygons, always true when
+     * the mask is empty.
+     */
+    public boolean contains(Rect box, int width, int height) {
+        if(polygons.isEmpty())
+            return true;
+
+        float x = (box.x + box.width * 0.5f) / width;
+        float y = (box.y + box.height * 0.5f) / height;
+        for (float[] polygon : polygons) {
+            if(inside(polygon, x, y))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes the boxes whose centre is outside the polygons.
+     *
+     * @return boxes removed
+     */
+    public int filter(List<Rect> boxes, int width, int height) {
+        int removed = 0;
+        for (int i = boxes.size() - 1; i >= 0; i--) {
+            if(!contains(boxes.get(i), width, height)) {
+                boxes.remove(i);
+                ++removed;
+            }
+        }
+
+        return removed;
+    }
+
+    // even-odd ray casting
+    private static boolean inside(float[] polygon, float x, float y) {
+        boolean inside = false;
+        int n = polygon.length / 2;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            float xi = polygon[2 * i];
+            float yi = polygon[2 * i + 1];
+            float xj = polygon[2 * j];
+            float yj = polygon[2 * j + 1];
+            if((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+
+        return inside;
+    }
+}
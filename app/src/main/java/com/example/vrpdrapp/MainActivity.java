@@ -1,8 +1,10 @@
 package com.example.vrpdrapp;
 
+import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.SurfaceView;
 import android.view.View;
@@ -26,26 +28,44 @@ import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
 public class MainActivity extends AppCompatActivity implements CameraBridgeViewBase.CvCameraViewListener2 {
     private static final String TAG = MainActivity.class.getSimpleName();
 
+    // launch options, e.g. adb shell am start -n com.example.vrpdrapp/.MainActivity --es segmenter projection
+    public static final String EXTRA_SEGMENTER = "segmenter";
+    public static final String EXTRA_CLASSIFIER = "classifier";
+    // --ei working_height 48 resamples every plate to 48 pixels high before segmentation
+    public static final String EXTRA_WORKING_HEIGHT = "working_height";
+    // fixed installations: --ei camera_index 0 --es lane_mask "0.1,0.5 0.9,0.5 0.9,1 0.1,1" (see LaneMask), the
+    // camera index is kept for the next launches and the mask is saved for that camera, an empty mask clears it
+    public static final String EXTRA_CAMERA_INDEX = "camera_index";
+    public static final String EXTRA_LANE_MASK = "lane_mask";
+    private static final String PREFERENCES_NAME = "launch_options";
+
     private CameraBridgeViewBase cameraBridgeViewBase;
     private BaseLoaderCallback baseLoaderCallback;
 
     private Mat currentFrame = null;
     private Mat cachedFrame = null;
-    private Yolo yolo;
+    private volatile Yolo yolo;
 
     private CharactersExtraction charactersExtraction;
     boolean ocrProcessing = false;
 
     private String ocrPrediction;
 
-    private EMNISTNet emnistNet;
+    private CharacterClassifier characterClassifier;
+
+    // HOG + SVM classifier instead of EMNISTNet, for devices where PyTorch inference is too slow (needs the
+    // hog_svm_characters.yml asset, see ClassifierBenchmarkTest)
+    private boolean lowEndClassifier = false;
 
     // NOTE: used for debugging
     private boolean debugPreview = false;
@@ -56,6 +76,90 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
     private Mat cachedProcessedRoi;
     private List<Mat> cachedDigits;
     private List<String> cachedPreds;
+    private DebugStageCollector debugStages = new DebugStageCollector();
+
+    private PlateReader plateReader;
+
+    // projection profile segmentation for clean, well aligned plates, the watershed segmenter is the fallback
+    private boolean projectionSegmentation = false;
+    private static final float MIN_SEGMENTATION_CONFIDENCE = 0.5f;
+
+    // plates are segmented at this height so the segmentation cost doesn't grow with the plate size, 0 keeps
+    // the resolution of the frame
+    private int workingHeight = 0;
+
+    // reads the plates of a frame concurrently when more than one is detected
+    private boolean parallelPlates = true;
+    private static final int PLATE_READER_WORKERS = 4;
+    private ParallelPlateReader parallelPlateReader;
+
+    // shared OCR cache for the identical crops of plates standing still
+    private CharacterCache characterCache = new CharacterCache(256, PlateReader.TOP_K);
+
+    // recognition starts only once the models went through their warm-up passes
+    private ModelWarmup modelWarmup = new ModelWarmup(3);
+
+    // models are loaded in the background as soon as the activity is created
+    private ModelRegistry modelRegistry;
+    private boolean startRecognitionWhenReady = true;
+
+    // accepted plate syntaxes, readings are decoded to the most probable match (see PlateFormat)
+    private static final String[] PLATE_FORMATS = new String[] { "LLLDDDD", "LLLDLDD" };
+
+    // segmented: CharactersExtraction + character classifier, sequence: whole plate CRNN + CTC decoding
+    private enum RecognitionMode { SEGMENTED, SEQUENCE }
+    private volatile RecognitionMode recognitionMode = RecognitionMode.SEGMENTED;
+    private PlateSequenceRecognizer sequenceRecognizer;
+    private long[] recognitionNanos = new long[RecognitionMode.values().length];
+    private long[] recognitionCount = new long[RecognitionMode.values().length];
+
+    // plates are followed across frames and read until the vote of their readings settles
+    private boolean trackPlates = true;
+    private static final int READINGS_PER_TRACK = 8;
+    private static final float SETTLE_MARGIN = 1.5f;
+    private PlateTracker plateTracker = new PlateTracker(0.3f, 5, READINGS_PER_TRACK, SETTLE_MARGIN);
+
+    // tracked plates are read only on the sharpest, best exposed frames of a sliding window
+    private boolean selectFrames = true;
+    private PlateQuality plateQuality;
+    private long trackedDetections = 0;
+    private long trackedReads = 0;
+
+    // plate boxes are moved by optical flow between detections, the detector runs every few frames
+    private boolean propagateBoxes = true;
+    private BoxPropagator boxPropagator;
+    private long detectedFrames = 0;
+    private long propagatedFrames = 0;
+
+    // low light: the last crops of a track are registered and averaged into one crop that is read once
+    private boolean fuseCrops = false;
+    private static final int FUSED_FRAMES = 5;
+    private CropFusion cropFusion;
+
+    // Yolo runs only on frames where a cheap cascade / edge density prefilter finds plate candidates
+    private boolean prefilterPlates = true;
+    // detect only around the candidates when they cover less than this fraction of the frame
+    private static final float PREFILTER_REGION_RATIO = 0.5f;
+    // margin around the candidates, as a fraction of their size, so the detector sees the whole plate
+    private static final float PREFILTER_REGION_MARGIN = 0.5f;
+    private PlatePrefilter platePrefilter;
+
+    // coarse Yolo pass on a small input over the whole frame, then a refinement pass on full resolution crops
+    private boolean coarseToFine = true;
+    private CoarseToFineDetector coarseToFineDetector;
+
+    // fixed installations: only plates inside the lane polygons of the camera are detected (see LaneMask)
+    private int cameraIndex = CameraBridgeViewBase.CAMERA_ID_ANY;
+    private LaneMask laneMask = new LaneMask();
+    private long laneSuppressed = 0;
+
+    // every vehicle is reported once, repeated and off-by-one-character reads within the window are dropped
+    private PlateEventDeduplicator plateEvents = new PlateEventDeduplicator(30000, 64);
+
+    // the detector runs only while something moves in front of the camera (fixed-mount cameras)
+    private boolean motionGating = true;
+    private MotionGate motionGate;
+    private boolean motionGateOpen = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -66,12 +170,22 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
         cameraBridgeViewBase.setVisibility(SurfaceView.VISIBLE);
         cameraBridgeViewBase.setCvCameraViewListener(this);
 
+        cameraIndex = getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE).getInt(EXTRA_CAMERA_INDEX, cameraIndex);
+        readLaunchOptions(getIntent());
+
+        cameraBridgeViewBase.setCameraIndex(cameraIndex);
+        laneMask = LaneMask.load(this, getLaneMaskId());
+        if(!laneMask.isEmpty()) {
+            Log.i(TAG, "Lane mask loaded for camera "+cameraIndex);
+        }
+
         baseLoaderCallback = new BaseLoaderCallback(this) {
             @Override
             public void onManagerConnected(int status) {
                 super.onManagerConnected(status);
                 switch (status) {
                     case BaseLoaderCallback.SUCCESS:
+                        loadModels();
                         cameraBridgeViewBase.enableView();
                         break;
                     default:
@@ -92,10 +206,24 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
                     debugPreview = false;
                     toggleDebugPreview(false);
                 }
+                plateTracker.clear();
+                if(boxPropagator != null) {
+                    boxPropagator.invalidate();
+                }
 
                 predictButton.setBackgroundColor(ocrProcessing ? Color.GREEN : Color.RED);
             }
         });
+        predictButton.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                recognitionMode = recognitionMode == RecognitionMode.SEGMENTED
+                        ? RecognitionMode.SEQUENCE : RecognitionMode.SEGMENTED;
+                plateTracker.clear();
+                Toast.makeText(getApplicationContext(), "Recognition: "+recognitionMode, Toast.LENGTH_SHORT).show();
+                return true;
+            }
+        });
 
         Button toggleDebugPreviewButton = findViewById(R.id.toggle_debug_preview);
         toggleDebugPreviewButton.setOnClickListener(new View.OnClickListener() {
@@ -148,13 +276,183 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
         });
 
         toggleDebugPreview(debugPreview);
+
+        if(selectFrames) {
+            plateTracker.setFrameSelection(10, 3, 0.05f);
+        }
+
+        if(OpenCVLoader.initDebug()) {
+            loadModels();
+        }
+    }
+
+    private void readLaunchOptions(Intent intent) {
+        if(intent == null) return;
+
+        if(intent.hasExtra(EXTRA_SEGMENTER)) {
+            projectionSegmentation = "projection".equals(intent.getStringExtra(EXTRA_SEGMENTER));
+            Log.i(TAG, "Segmenter: "+(projectionSegmentation ? "projection profile" : "watershed"));
+        }
+        if(intent.hasExtra(EXTRA_CLASSIFIER)) {
+            lowEndClassifier = "hog".equals(intent.getStringExtra(EXTRA_CLASSIFIER));
+            Log.i(TAG, "Character classifier: "+(lowEndClassifier ? "HOG + SVM" : "EMNISTNet"));
+        }
+        if(intent.hasExtra(EXTRA_WORKING_HEIGHT)) {
+            workingHeight = Math.max(0, intent.getIntExtra(EXTRA_WORKING_HEIGHT, workingHeight));
+            Log.i(TAG, "Segmentation working height: "+(workingHeight > 0 ? workingHeight+" px" : "frame resolution"));
+        }
+        if(intent.hasExtra(EXTRA_CAMERA_INDEX)) {
+            cameraIndex = intent.getIntExtra(EXTRA_CAMERA_INDEX, cameraIndex);
+            getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE).edit().putInt(EXTRA_CAMERA_INDEX, cameraIndex).apply();
+            Log.i(TAG, "Camera index: "+cameraIndex);
+        }
+        if(intent.hasExtra(EXTRA_LANE_MASK)) {
+            try {
+                LaneMask.parse(intent.getStringExtra(EXTRA_LANE_MASK)).save(this, getLaneMaskId());
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Invalid lane mask: "+intent.getStringExtra(EXTRA_LANE_MASK), e);
+                Toast.makeText(getApplicationContext(), "Invalid lane mask, keeping the saved one", Toast.LENGTH_LONG).show();
+            }
+        }
+    }
+
+    // masks are kept per camera, they only hold for the view of the camera they were drawn on
+    private String getLaneMaskId() {
+        return "camera_"+cameraIndex;
+    }
+
+    private void loadModels() {
+        if(modelRegistry != null) return;
+
+        modelRegistry = new ModelRegistry(3);
+
+        if(!coarseToFine) {
+            modelRegistry.register("yolo", this::createFullDetector);
+        } else {
+            // the full size network is only loaded when a stage fails to load, or on the first debug detection
+            modelRegistry.registerOptional("coarseYolo", () -> new Yolo(this,
+                    320, 192,
+                    "classes.names",
+                    "yolov3_license_plates_tiny.cfg",
+                    "yolov3_license_plates_tiny_best.weights",
+                    0.5f,
+                    0.5f));
+            modelRegistry.registerOptional("fineYolo", () -> new Yolo(this,
+                    256, 96,
+                    "classes.names",
+                    "yolov3_license_plates_tiny.cfg",
+                    "yolov3_license_plates_tiny_best.weights",
+                    0.6f,
+                    0.5f));
+        }
+
+        modelRegistry.register("characterClassifier", this::createCharacterClassifier);
+
+        if(parallelPlates) {
+            modelRegistry.registerOptional("parallelPlateReader", () -> new ParallelPlateReader(PLATE_READER_WORKERS,
+                    () -> createPlateReader(new CharactersExtraction(0.006f, 0.3f), createCharacterClassifier())));
+        }
+
+        modelRegistry.registerOptional("sequenceRecognizer", () -> new PlateSequenceRecognizer(this,
+                "crnn_plates_mobile.pth", 128, 32, EMNISTNet.CLASS_LABELS));
+
+        modelRegistry.registerOptional("platePrefilter", () -> new PlatePrefilter(this, "lbp_plates_cascade.xml", 320, 30));
+
+        modelRegistry.whenLoaded(() -> {
+            List<String> failedModels = modelRegistry.getFailedModels();
+            if(modelRegistry.hasFailed()) {
+                showLoadError("Failed to load "+failedModels+", recognition is disabled");
+                return;
+            } else if(!failedModels.isEmpty()) {
+                showLoadError("Failed to load "+failedModels);
+            }
+
+            yolo = modelRegistry.get("yolo");
+            characterClassifier = modelRegistry.get("characterClassifier");
+            parallelPlateReader = modelRegistry.get("parallelPlateReader");
+            sequenceRecognizer = modelRegistry.get("sequenceRecognizer");
+            platePrefilter = modelRegistry.get("platePrefilter");
+
+            charactersExtraction = new CharactersExtraction(0.006f, 0.3f);
+            plateReader = createPlateReader(charactersExtraction, characterClassifier);
+
+            List<CharacterClassifier> classifiers = new ArrayList<>();
+            classifiers.add(characterClassifier);
+            if(parallelPlateReader != null) {
+                for (PlateReader reader : parallelPlateReader.getReaders()) {
+                    classifiers.add(reader.getClassifier());
+                }
+            }
+            List<Yolo> detectors = new ArrayList<>();
+            if(coarseToFine && modelRegistry.get("coarseYolo") != null && modelRegistry.get("fineYolo") != null) {
+                coarseToFineDetector = new CoarseToFineDetector(modelRegistry.get("coarseYolo"), modelRegistry.get("fineYolo"), 0.5f, 1.0f);
+                detectors.add(coarseToFineDetector.getCoarse());
+                detectors.add(coarseToFineDetector.getFine());
+            } else {
+                try {
+                    if(yolo == null) {
+                        yolo = createFullDetector();
+                    }
+                    detectors.add(yolo);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to load the plate detector", e);
+                    showLoadError("Failed to load the plate detector, recognition is disabled");
+                    return;
+                }
+            }
+
+            modelWarmup.start(detectors, classifiers,
+                    sequenceRecognizer != null && sequenceRecognizer.isLoaded() ? sequenceRecognizer : null);
+
+            if(startRecognitionWhenReady) {
+                runOnUiThread(() -> {
+                    if(!debugPreview) {
+                        ocrProcessing = true;
+                        findViewById(R.id.recog_button).setBackgroundColor(Color.GREEN);
+                    }
+                });
+            }
+        });
+    }
+
+    private Yolo createFullDetector() {
+        return new Yolo(this,
+                768, 416,
+                "classes.names",
+                "yolov3_license_plates_tiny.cfg",
+                "yolov3_license_plates_tiny_best.weights",
+                0.6f,
+                0.5f);
+    }
+
+    /**
+     * The whole frame detector. With coarse to fine detection it is loaded on the model registry the first time
+     * it is asked for, null until then.
+     */
+    private synchronized Yolo getFullDetector() {
+        if(yolo == null && !modelRegistry.isRegistered("yolo")) {
+            Log.i(TAG, "Loading the full size detector");
+            modelRegistry.registerOptional("yolo", this::createFullDetector);
+            modelRegistry.whenLoaded(() -> {
+                yolo = modelRegistry.get("yolo");
+                if(yolo == null) {
+                    showLoadError("Failed to load the full size detector");
+                }
+            });
+        }
+
+        return yolo;
+    }
+
+    private void showLoadError(String message) {
+        runOnUiThread(() -> Toast.makeText(getApplicationContext(), message, Toast.LENGTH_LONG).show());
     }
 
     private void predict(boolean debug) {
-        if(currentFrame == null) return;
+        if(currentFrame == null || !modelWarmup.isReady()) return;
 
         cachedFrame = currentFrame.clone();
-        List<Rect> boundingBoxes = yolo.detect(currentFrame, true);
+        List<Rect> boundingBoxes = detectPlates(debug);
 
         if(boundingBoxes != null && !boundingBoxes.isEmpty()) {
             for (Rect boundingBox : boundingBoxes) {
@@ -169,25 +467,199 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
                 }
 
                 Log.i(TAG, "ROI(x,y,w,h) ---> ROI("+boundingBox.x+"," +boundingBox.y+","+boundingBox.width+","+boundingBox.height+")");
-                Mat roi = new Mat(cachedFrame, boundingBox);
-                List<Mat> chars = charactersExtraction.extract(roi);
+            }
+
+            if(debug) {
+                for (Rect boundingBox : boundingBoxes) {
+                    Mat roi = new Mat(cachedFrame, boundingBox);
+
+                    charactersExtraction.setDebugSink(debugStages);
+                    List<Mat> chars = charactersExtraction.extract(roi);
+                    for (Rect box : charactersExtraction.getCharacterBoxes()) {
+                        Imgproc.rectangle(currentFrame, new Point(boundingBox.x + box.x, boundingBox.y + box.y),
+                                new Point(boundingBox.x + box.x + box.width, boundingBox.y + box.y + box.height),
+                                new Scalar(255, 0, 255), 1);
+                    }
 
-                List<String> preds = predictCharacters(chars);
-                ocrPrediction = String.join("", preds);
-                drawPredictionBoundingBox(currentFrame, boundingBox, ocrPrediction);
+                    List<String> preds = predictCharacters(chars);
+                    ocrPrediction = String.join("", preds);
+                    drawPredictionBoundingBox(currentFrame, boundingBox, ocrPrediction);
 
-                if(debug) {
                     clearCaches();
                     cachedFrame = currentFrame.clone();
                     cachedRoi = roi.clone();
-                    cachedProcessedRoi = charactersExtraction.getFinalProcessedImage().clone();
+                    cachedProcessedRoi = debugStages.get(DebugSink.STAGE_MASK).clone();
                     cachedDigits = chars;
                     cachedPreds = preds;
+
+                    roi.release();
                 }
+            } else if(trackPlates) {
+                List<PlateTrack> tracks = plateTracker.update(boundingBoxes);
+
+                List<Rect> unread = new ArrayList<>();
+                List<PlateTrack> unreadTracks = new ArrayList<>();
+                List<PlateTrack> fusedTracks = new ArrayList<>();
+                for (int i = 0; i < tracks.size(); i++) {
+                    PlateTrack track = tracks.get(i);
+                    if(!track.needsOcr())
+                        continue;
+
+                    if(fuseCrops) {
+                        if(cropFusion.add(track.getId(), cachedFrame, boundingBoxes.get(i))) {
+                            fusedTracks.add(track);
+                        }
+                        continue;
+                    }
 
-                roi.release();
+                    if(selectFrames && !track.selectFrame(plateQuality.score(cachedFrame, boundingBoxes.get(i))))
+                        continue;
+
+                    unread.add(boundingBoxes.get(i));
+                    unreadTracks.add(track);
+                }
+
+                if(!unread.isEmpty()) {
+                    float[] confidences = new float[unread.size()];
+                    List<String> readings = readPlates(cachedFrame, unread, confidences);
+                    for (int i = 0; i < readings.size(); i++) {
+                        unreadTracks.get(i).addReading(readings.get(i), confidences[i]);
+                    }
+                }
+
+                float[] fusedConfidence = new float[1];
+                for (PlateTrack track : fusedTracks) {
+                    Mat fused = cropFusion.fuse(track.getId());
+                    List<String> reading = readPlates(fused,
+                            Collections.singletonList(new Rect(0, 0, fused.cols(), fused.rows())), fusedConfidence);
+                    track.addReading(reading.get(0), fusedConfidence[0]);
+                }
+                unreadTracks.addAll(fusedTracks);
+
+                trackedDetections += boundingBoxes.size();
+                trackedReads += unreadTracks.size();
+
+                for (PlateTrack track : unreadTracks) {
+                    if(track.isSettled() && !track.isReported()) {
+                        track.setReported();
+                        reportPlate(track.getText());
+                    }
+                }
+
+                for (int i = 0; i < tracks.size(); i++) {
+                    if(tracks.get(i).getText() == null)
+                        continue;
+
+                    ocrPrediction = tracks.get(i).getText();
+                    drawPredictionBoundingBox(currentFrame, boundingBoxes.get(i), ocrPrediction);
+                    modelWarmup.onResult();
+                    modelRegistry.onFirstRead();
+                }
+            } else {
+                List<String> readings = readPlates(cachedFrame, boundingBoxes, null);
+                for (int i = 0; i < boundingBoxes.size(); i++) {
+                    if(readings.get(i) == null)
+                        continue;
+
+                    ocrPrediction = readings.get(i);
+                    drawPredictionBoundingBox(currentFrame, boundingBoxes.get(i), ocrPrediction);
+                    reportPlate(ocrPrediction);
+                    modelWarmup.onResult();
+                    modelRegistry.onFirstRead();
+                }
+            }
+        }
+
+        if(debug) {
+            charactersExtraction.setDebugSink(null);
+            debugStages.clear();
+        }
+    }
+
+    private List<Rect> detectPlates(boolean debug) {
+        if(propagateBoxes && !debug) {
+            List<Rect> boundingBoxes = boxPropagator.propagate(cachedFrame);
+            if(boundingBoxes != null) {
+                for (int i = 0; i < boundingBoxes.size(); i++) {
+                    float confidence = boxPropagator.getConfidence(i);
+                    Yolo.drawBoundingBox(currentFrame, confidence, String.format("flow [%.0f%%]", 100 * confidence),
+                            2.0f, boundingBoxes.get(i), 2);
+                }
+                ++propagatedFrames;
+                return boundingBoxes;
+            }
+        }
+
+        List<Rect> boundingBoxes;
+        if(prefilterPlates && platePrefilter != null && !debug) {
+            List<Rect> candidates = platePrefilter.findCandidates(cachedFrame);
+            laneMask.filter(candidates, currentFrame.cols(), currentFrame.rows());
+            if(!platePrefilter.shouldDetect()) {
+                boundingBoxes = new ArrayList<>();
+            } else {
+                long start = System.nanoTime();
+                Rect region = platePrefilter.getCandidateRegion(currentFrame, PREFILTER_REGION_MARGIN);
+                if(!candidates.isEmpty() && region.area() < PREFILTER_REGION_RATIO * currentFrame.total()) {
+                    boundingBoxes = runDetector(region, false);
+                } else {
+                    boundingBoxes = runDetector(null, false);
+                }
+                platePrefilter.onDetection(boundingBoxes.size(), System.nanoTime() - start);
+            }
+        } else {
+            boundingBoxes = runDetector(null, debug);
+        }
+
+        if(propagateBoxes) {
+            boxPropagator.reset(cachedFrame, boundingBoxes);
+        }
+        ++detectedFrames;
+
+        return boundingBoxes;
+    }
+
+    /**
+     * @param region part of the frame to search, null for the whole frame
+     */
+    private List<Rect> runDetector(Rect region, boolean debug) {
+        if(debug || laneMask.isEmpty())
+            return runDetectorOn(region, debug);
+
+        // the detector input is the bounding region of the lanes, the plates outside the lanes are dropped
+        Rect laneRegion = laneMask.getBoundingRegion(currentFrame.cols(), currentFrame.rows());
+        if(region != null) {
+            int x0 = Math.max(region.x, laneRegion.x);
+            int y0 = Math.max(region.y, laneRegion.y);
+            int x1 = Math.min(region.x + region.width, laneRegion.x + laneRegion.width);
+            int y1 = Math.min(region.y + region.height, laneRegion.y + laneRegion.height);
+            if(x1 <= x0 || y1 <= y0)
+                return new ArrayList<>();
+            laneRegion = new Rect(x0, y0, x1 - x0, y1 - y0);
+        } else if(laneRegion.area() == 0) {
+            return new ArrayList<>();
+        }
+
+        List<Rect> boundingBoxes = runDetectorOn(laneRegion, false);
+        laneSuppressed += laneMask.filter(boundingBoxes, currentFrame.cols(), currentFrame.rows());
+
+        return boundingBoxes;
+    }
+
+    private List<Rect> runDetectorOn(Rect region, boolean debug) {
+        // the debug preview uses the full size detector once it is loaded
+        Yolo detector = debug || coarseToFineDetector == null ? getFullDetector() : null;
+        if(detector == null && coarseToFineDetector != null) {
+            List<Rect> boundingBoxes = coarseToFineDetector.detect(cachedFrame, region);
+            for (Rect boundingBox : boundingBoxes) {
+                Imgproc.rectangle(currentFrame, boundingBox.tl(), boundingBox.br(), new Scalar(0, 255, 0), 2);
             }
+            return boundingBoxes;
         }
+
+        if(detector == null)
+            return new ArrayList<>();
+
+        return region == null ? detector.detect(currentFrame, true) : detector.detectAtFrameScale(currentFrame, region, true);
     }
 
     private void clearCaches() {
@@ -223,7 +695,7 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
     public Mat onCameraFrame(CameraBridgeViewBase.CvCameraViewFrame inputFrame) {
         Imgproc.cvtColor(inputFrame.rgba(), currentFrame, Imgproc.COLOR_RGBA2RGB);
 
-       if(ocrProcessing) {
+       if(ocrProcessing && passesMotionGate()) {
             predict(false);
         }
 
@@ -234,13 +706,66 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
         return currentFrame;
     }
 
-    private List<String> predictCharacters(List<Mat> characters) {
-        List<String> predictChars = new ArrayList<>();
-        for (Mat ch : characters) {
-            predictChars.add(emnistNet.predict(ch));
+    private void reportPlate(String plate) {
+        if(plateEvents.accept(plate, SystemClock.elapsedRealtime())) {
+            Log.i(TAG, "Plate event: "+plate);
+        }
+    }
+
+    private boolean passesMotionGate() {
+        if(!motionGating)
+            return true;
+
+        boolean open = motionGate.update(currentFrame);
+        if(motionGateOpen && !open) {
+            // the scene was idle, whatever shows up next is a new vehicle
+            plateTracker.clear();
+            boxPropagator.invalidate();
+        }
+        motionGateOpen = open;
+
+        return open;
+    }
+
+    /**
+     * @param confidences receives the confidence of each reading, may be null
+     */
+    private List<String> readPlates(Mat frame, List<Rect> boundingBoxes, float[] confidences) {
+        RecognitionMode mode = recognitionMode;
+        if(mode == RecognitionMode.SEQUENCE && (sequenceRecognizer == null || !sequenceRecognizer.isLoaded())) {
+            Log.w(TAG, "Plate sequence recognizer not available, using segmented recognition");
+            mode = RecognitionMode.SEGMENTED;
+        }
+
+        long start = System.nanoTime();
+        List<String> readings;
+        if(mode == RecognitionMode.SEQUENCE) {
+            readings = new ArrayList<>(boundingBoxes.size());
+            for (int i = 0; i < boundingBoxes.size(); i++) {
+                Mat roi = new Mat(frame, boundingBoxes.get(i));
+                readings.add(sequenceRecognizer.recognize(roi));
+                roi.release();
+                if(confidences != null) {
+                    confidences[i] = sequenceRecognizer.getLastConfidence();
+                }
+            }
+        } else if(parallelPlates && parallelPlateReader != null && boundingBoxes.size() > 1) {
+            readings = parallelPlateReader.read(frame, boundingBoxes, confidences);
+        } else {
+            readings = plateReader.read(frame, boundingBoxes);
+            for (int i = 0; confidences != null && i < boundingBoxes.size(); i++) {
+                confidences[i] = plateReader.getConfidence(i);
+            }
         }
 
-        return predictChars;
+        recognitionNanos[mode.ordinal()] += System.nanoTime() - start;
+        recognitionCount[mode.ordinal()] += boundingBoxes.size();
+
+        return readings;
+    }
+
+    private List<String> predictCharacters(List<Mat> characters) {
+        return new ArrayList<>(Arrays.asList(characterClassifier.predictBatch(characters)));
     }
 
     private void drawLabeledBoundingBox(Mat inputImage, String label, float fontScale, Scalar recColor, Scalar textColor, Rect boundingBox, int thickness) {
@@ -289,30 +814,111 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
     @Override
     public void onCameraViewStarted(int width, int height) {
         currentFrame = new Mat(height, width, CvType.CV_8UC3);
+        plateQuality = new PlateQuality(30);
+        boxPropagator = new BoxPropagator(0.5f, 5, 0.5f);
+        if(motionGate == null) {
+            // kept across camera restarts, the background model of a fixed camera still holds
+            motionGate = new MotionGate(160, 0.01f, 30, true);
+        }
+        Rect lanes = laneMask.getBoundingRegion(width, height);
+        motionGate.setRegion((float) lanes.x / width, (float) lanes.y / height,
+                (float) lanes.width / width, (float) lanes.height / height);
+        cropFusion = new CropFusion(FUSED_FRAMES, 64, 4);
+        motionGateOpen = false;
 
         Log.i(TAG, "Camera View Started  - Resolution: "+width+"x"+height);
+    }
 
-        yolo = new Yolo(this,
-                768, 416,
-                "classes.names",
-                "yolov3_license_plates_tiny.cfg",
-                "yolov3_license_plates_tiny_best.weights",
-                0.6f,
-                0.5f);
+    private PlateReader createPlateReader(CharactersExtraction extraction, CharacterClassifier classifier) {
+        extraction.setWorkingHeight(workingHeight);
+        if(projectionSegmentation) {
+            extraction.setSegmenter(new ProjectionProfileSegmenter(extraction.getMinContourAreaRatio(),
+                    extraction.getMaxContourAreaRatio()), MIN_SEGMENTATION_CONFIDENCE);
+        }
+
+        PlateReader reader = new PlateReader(extraction, classifier);
+
+        PlateGrammarDecoder grammar = new PlateGrammarDecoder(10);
+        for (String plateFormat : PLATE_FORMATS) {
+            grammar.addFormat(plateFormat, plateFormat);
+        }
+        reader.setGrammar(grammar);
+
+        return reader;
+    }
+
+    private CharacterClassifier createCharacterClassifier() {
+        if(lowEndClassifier) {
+            try {
+                return HogCharacterClassifier.loadSvm(this, "hog_svm_characters.yml");
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to load HOG character classifier, using EMNISTNet instead");
+            }
+        }
 
-        charactersExtraction = new CharactersExtraction(0.006f, 0.3f);
+        EMNISTNet emnistNet = new EMNISTNet(this, "emnist_net_custom_mobile.pth");
+        emnistNet.setCache(characterCache);
 
-        emnistNet = new EMNISTNet(this, "emnist_net_custom_mobile.pth");
+        return emnistNet;
     }
 
     @Override
     public void onCameraViewStopped() {
+        Log.i(TAG, "Character cache - hits: "+characterCache.getHits()+", misses: "+characterCache.getMisses()
+                +", hit rate: "+characterCache.getHitRate());
+        if(cropFusion != null && cropFusion.getFuseCount() > 0) {
+            Log.i(TAG, "Crop fusion - fused reads: "+cropFusion.getFuseCount()+", crops per read: "+cropFusion.getAverageFusedCrops()
+                    +", fusion: "+cropFusion.getAverageFuseMillis()+" ms, stage: "+cropFusion.getAverageStageMillis()+" ms/read");
+        }
+        if(platePrefilter != null && platePrefilter.getFrames() > 0) {
+            Log.i(TAG, "Plate prefilter ("+(platePrefilter.usesCascade() ? "cascade" : "edge density")+") - frames: "
+                    +platePrefilter.getFrames()+", rejected: "+platePrefilter.getRejectedFrames()
+                    +", hit rate: "+platePrefilter.getHitRate()+", missed plates per audit: "+platePrefilter.getMissRate()
+                    +", cost: "+platePrefilter.getAveragePrefilterMillis()+" ms/frame, time saved: "+platePrefilter.getTimeSavedMillis()+" ms");
+        }
+        if(coarseToFineDetector != null && coarseToFineDetector.getAverageCoarseMillis() > 0) {
+            Log.i(TAG, "Coarse to fine detection - coarse: "+coarseToFineDetector.getAverageCoarseMillis()+" ms, fine: "
+                    +coarseToFineDetector.getAverageFineMillis()+" ms, refined boxes: "+coarseToFineDetector.getRefinedRatio());
+        }
+        if(!laneMask.isEmpty()) {
+            Log.i(TAG, "Lane mask - plates outside the lanes: "+laneSuppressed);
+        }
+        Log.i(TAG, "Plate events - reported: "+plateEvents.getAccepted()+", duplicates: "+plateEvents.getSuppressed());
+        if(motionGating && motionGate != null) {
+            Log.i(TAG, "Motion gate - open frames: "+motionGate.getOpenFrames()+", closed frames: "+motionGate.getClosedFrames());
+        }
+        if(propagatedFrames > 0) {
+            Log.i(TAG, "Box propagation - detected frames: "+detectedFrames+", propagated frames: "+propagatedFrames);
+        }
+        if(trackedDetections > 0) {
+            Log.i(TAG, "Plate tracker - detections: "+trackedDetections+", OCR reads: "+trackedReads
+                    +", skipped: "+(trackedDetections - trackedReads));
+        }
+        for (RecognitionMode mode : RecognitionMode.values()) {
+            if(recognitionCount[mode.ordinal()] > 0) {
+                Log.i(TAG, mode+" recognition - plates: "+recognitionCount[mode.ordinal()]+", average: "
+                        +recognitionNanos[mode.ordinal()] / recognitionCount[mode.ordinal()] / 1e6+" ms/plate");
+            }
+        }
+
         if(currentFrame != null) {
             currentFrame.release();
         }
         if(cachedFrame != null) {
             cachedFrame.release();
         }
+        if(plateQuality != null) {
+            plateQuality.release();
+        }
+        if(boxPropagator != null) {
+            boxPropagator.release();
+        }
+        if(motionGate != null) {
+            motionGate.release();
+        }
+        if(cropFusion != null) {
+            cropFusion.release();
+        }
     }
 
     @Override
@@ -345,6 +951,20 @@ public class MainActivity extends AppCompatActivity implements CameraBridgeViewB
         if (cameraBridgeViewBase != null){
             cameraBridgeViewBase.disableView();
         }
+
+        if(parallelPlateReader != null) {
+            parallelPlateReader.shutdown();
+        }
+
+        modelWarmup.shutdown();
+
+        if(modelRegistry != null) {
+            modelRegistry.shutdown();
+        }
+
+        if(platePrefilter != null) {
+            platePrefilter.release();
+        }
     }
 
     private void toggleDebugPreview(boolean enable) {
@@ -0,0 +1,204 @@
+package com.example.vrpdrapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Copies model assets to app storage once per app version. Each copy is recorded with the app version, its
+ * length and its CRC32, so truncated copies and copies from a previous version are replaced while valid ones
+ * are reused without touching the asset again. The CRC32 of a copy is checked the first time it is used in a
+ * process, so a corrupted copy is replaced too.
+ */
+public class ModelCache {
+
+    private static final String TAG = ModelCache.class.getSimpleName();
+
+    private static final String PREFERENCES_NAME = "model_cache";
+    private static final String DIRECTORY_NAME = "models";
+    private static final String LEGACY_COPIES_REMOVED = "legacy_copies_removed";
+
+    private static ModelCache instance;
+
+    private Context context;
+    private SharedPreferences preferences;
+    private File directory;
+    private String appVersion;
+
+    // assets whose copy passed the CRC32 check in this process
+    private Set<String> verified = new HashSet<>();
+
+    private ModelCache(Context context) {
+        this.context = context.getApplicationContext();
+        this.preferences = this.context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        this.directory = new File(this.context.getFilesDir(), DIRECTORY_NAME);
+        this.appVersion = readAppVersion();
+
+        if(!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Failed to create model cache directory "+directory.getAbsolutePath());
+        }
+
+        removeLegacyCopies();
+    }
+
+    public static synchronized ModelCache getInstance(Context context) {
+        if(instance == null) {
+            instance = new ModelCache(context);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Returns the cached copy of an asset, copying it first when missing, truncated or from another app version.
+     */
+    public synchronized File getFile(String assetName) throws IOException {
+        File file = new File(directory, assetName);
+
+        if(isValid(assetName, file)) {
+            return file;
+        }
+
+        Log.i(TAG, "Caching asset "+assetName);
+
+        File tmpFile = new File(directory, assetName + ".tmp");
+        CRC32 crc = new CRC32();
+        long length = 0;
+        try (InputStream is = context.getAssets().open(assetName)) {
+            try (OutputStream os = new FileOutputStream(tmpFile)) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    os.write(buffer, 0, read);
+                    crc.update(buffer, 0, read);
+                    length += read;
+                }
+                os.flush();
+            }
+        }
+
+        if(!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Failed to move cached asset to "+file.getAbsolutePath());
+        }
+
+        preferences.edit()
+                .putString(assetName, appVersion + ":" + length + ":" + crc.getValue())
+                .commit();
+        verified.add(assetName);
+
+        return file;
+    }
+
+    private boolean isValid(String assetName, File file) throws IOException {
+        String entry = preferences.getString(assetName, null);
+        if(entry == null || !file.exists())
+            return false;
+
+        String[] fields = entry.split(":");
+        if(fields.length != 3 || !fields[0].equals(appVersion))
+            return false;
+
+        try {
+            if(Long.parseLong(fields[1]) != file.length())
+                return false;
+            if(verified.contains(assetName))
+                return true;
+            if(Long.parseLong(fields[2]) != checksum(file)) {
+                Log.w(TAG, "Cached copy of "+assetName+" is corrupted");
+                return false;
+            }
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid cache entry for "+assetName+": "+entry);
+            return false;
+        }
+
+        verified.add(assetName);
+        return true;
+    }
+
+    private static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream is = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    public String getPath(String assetName) throws IOException {
+        return getFile(assetName).getAbsolutePath();
+    }
+
+    /**
+     * Memory maps the cached copy of an asset (read only), for loaders that take a ByteBuffer.
+     */
+    public MappedByteBuffer map(String assetName) throws IOException {
+        File file = getFile(assetName);
+        try (FileInputStream is = new FileInputStream(file)) {
+            FileChannel channel = is.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Drops a cached asset so the next getFile() copies it again.
+     */
+    public synchronized void invalidate(String assetName) {
+        preferences.edit().remove(assetName).commit();
+        verified.remove(assetName);
+        new File(directory, assetName).delete();
+    }
+
+    /**
+     * Earlier versions copied the assets to the root of the files directory on every launch, deletes those
+     * copies once.
+     */
+    private void removeLegacyCopies() {
+        if(preferences.getBoolean(LEGACY_COPIES_REMOVED, false))
+            return;
+
+        try {
+            String[] assetNames = context.getAssets().list("");
+            if(assetNames != null) {
+                for (String assetName : assetNames) {
+                    File file = new File(context.getFilesDir(), assetName);
+                    if(file.isFile() && file.delete()) {
+                        Log.i(TAG, "Deleted legacy copy of asset "+assetName);
+                    }
+                }
+            }
+            preferences.edit().putBoolean(LEGACY_COPIES_REMOVED, true).apply();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to list assets, legacy copies will be removed on the next launch", e);
+        }
+    }
+
+    private String readAppVersion() {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return info.getLongVersionCode() + "-" + info.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "Failed to read app version, cached models won't be reused across launches");
+            return String.valueOf(System.currentTimeMillis());
+        }
+    }
+}
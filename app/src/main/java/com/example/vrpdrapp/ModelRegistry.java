@@ -0,0 +1,160 @@
+package com.example.vrpdrapp;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads models concurrently on a background executor, independently of the camera lifecycle. Optional models
+ * may fail to load without affecting the required ones.
+ */
+public class ModelRegistry {
+
+    private static final String TAG = ModelRegistry.class.getSimpleName();
+
+    private ExecutorService executor;
+
+    private Map<String, Future<?>> models = new LinkedHashMap<>();
+    private Set<String> optionalModels = new HashSet<>();
+    private List<String> failedModels = new ArrayList<>();
+
+    private long createdAt = System.nanoTime();
+    private volatile long loadMillis = -1;
+    private volatile long coldStartToFirstReadMillis = -1;
+    private volatile boolean failed = false;
+
+    public ModelRegistry(int threads) {
+        executor = Executors.newFixedThreadPool(Math.max(1, threads));
+    }
+
+    /**
+     * Starts loading a required model right away.
+     */
+    public synchronized <T> void register(String name, Callable<T> loader) {
+        optionalModels.remove(name);
+        submit(name, loader);
+    }
+
+    /**
+     * Starts loading a model the app can run without, e.g. an alternative recognizer whose asset may be missing.
+     */
+    public synchronized <T> void registerOptional(String name, Callable<T> loader) {
+        optionalModels.add(name);
+        submit(name, loader);
+    }
+
+    private <T> void submit(String name, Callable<T> loader) {
+        models.put(name, executor.submit(() -> {
+            long start = System.nanoTime();
+            T model = loader.call();
+            Log.i(TAG, name+" loaded in "+(System.nanoTime() - start) / 1000000+" ms");
+            return model;
+        }));
+    }
+
+    public synchronized boolean isRegistered(String name) {
+        return models.containsKey(name);
+    }
+
+    /**
+     * @return the loaded model, null while it is still loading or if it failed to load
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T get(String name) {
+        Future<?> model = models.get(name);
+        if(model == null || !model.isDone())
+            return null;
+
+        try {
+            return (T) model.get();
+        } catch (ExecutionException | InterruptedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs the callback on a background thread once every registered model finished loading, successfully or
+     * not. Models that failed to load are null in get(), see getFailedModels() and hasFailed().
+     */
+    public void whenLoaded(Runnable callback) {
+        Map<String, Future<?>> pending;
+        synchronized (this) {
+            pending = new LinkedHashMap<>(models);
+        }
+
+        executor.execute(() -> {
+            for (Map.Entry<String, Future<?>> model : pending.entrySet()) {
+                try {
+                    model.getValue().get();
+                } catch (ExecutionException e) {
+                    onFailure(model.getKey(), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            loadMillis = (System.nanoTime() - createdAt) / 1000000;
+            Log.i(TAG, "Models loaded "+loadMillis+" ms after start"
+                    +(failedModels.isEmpty() ? "" : ", failed: "+getFailedModels()));
+
+            callback.run();
+        });
+    }
+
+    private synchronized void onFailure(String name, Throwable cause) {
+        if(failedModels.contains(name))
+            return;
+
+        failedModels.add(name);
+        if(optionalModels.contains(name)) {
+            Log.w(TAG, "Failed to load optional model "+name, cause);
+        } else {
+            failed = true;
+            Log.e(TAG, "Failed to load model "+name, cause);
+        }
+    }
+
+    /**
+     * Records the cold start to first read time, only the first call counts.
+     */
+    public void onFirstRead() {
+        if(coldStartToFirstReadMillis < 0) {
+            coldStartToFirstReadMillis = (System.nanoTime() - createdAt) / 1000000;
+            Log.i(TAG, "Cold start to first read: "+coldStartToFirstReadMillis+" ms");
+        }
+    }
+
+    /**
+     * True when a required model failed to load.
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    public synchronized List<String> getFailedModels() {
+        return new ArrayList<>(failedModels);
+    }
+
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    public long getColdStartToFirstReadMillis() {
+        return coldStartToFirstReadMillis;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.vrpdrapp;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Warms the models up on a background thread and publishes when recognition can start. Warm-up only moves the
+ * lazy initialization cost out of the first reads, so a model that fails to warm up doesn't hold recognition
+ * back.
+ */
+public class ModelWarmup {
+
+    private static final String TAG = ModelWarmup.class.getSimpleName();
+
+    public enum State { NOT_STARTED, WARMING_UP, READY }
+
+    private volatile State state = State.NOT_STARTED;
+
+    private int iterations;
+
+    private ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private long startTime;
+    private volatile long warmupMillis = -1;
+    private volatile long timeToFirstResultMillis = -1;
+    private volatile int failures = 0;
+
+    public ModelWarmup(int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * Starts warming the models up, recognition must not use them until isReady().
+     */
+    public void start(Yolo yolo, List<CharacterClassifier> classifiers) {
+        start(yolo, classifiers, null);
+    }
+
+    /**
+     * Same as start(yolo, classifiers), also warming up the whole plate sequence recognizer when not null.
+     */
+    public void start(Yolo yolo, List<CharacterClassifier> classifiers, PlateSequenceRecognizer sequenceRecognizer) {
+        start(Arrays.asList(yolo), classifiers, sequenceRecognizer);
+    }
+
+    /**
+     * Same as start(yolo, classifiers, sequenceRecognizer) for several detectors, e.g. the stages of a
+     * CoarseToFineDetector.
+     */
+    public void start(List<Yolo> detectors, List<CharacterClassifier> classifiers, PlateSequenceRecognizer sequenceRecognizer) {
+        startTime = System.nanoTime();
+        warmupMillis = -1;
+        timeToFirstResultMillis = -1;
+        failures = 0;
+        state = State.WARMING_UP;
+
+        List<Yolo> yolos = new ArrayList<>(detectors);
+        List<CharacterClassifier> models = new ArrayList<>(classifiers);
+        executor.execute(() -> {
+            for (Yolo yolo : yolos) {
+                warmUp(yolo, () -> yolo.warmUp(iterations));
+            }
+            for (CharacterClassifier classifier : models) {
+                warmUp(classifier, () -> classifier.warmUp(iterations));
+            }
+            if(sequenceRecognizer != null) {
+                warmUp(sequenceRecognizer, () -> sequenceRecognizer.warmUp(iterations));
+            }
+
+            warmupMillis = (System.nanoTime() - startTime) / 1000000;
+            state = State.READY;
+            Log.i(TAG, "Models ready after "+warmupMillis+" ms of warm-up"+(failures > 0 ? ", "+failures+" failed" : ""));
+        });
+    }
+
+    private void warmUp(Object model, Runnable warmUp) {
+        try {
+            warmUp.run();
+        } catch (RuntimeException e) {
+            ++failures;
+            Log.e(TAG, "Failed to warm up "+model.getClass().getSimpleName()+", it will initialize on its first use", e);
+        }
+    }
+
+    public void start(Yolo yolo, CharacterClassifier... classifiers) {
+        start(yolo, Arrays.asList(classifiers));
+    }
+
+    /**
+     * Records the time to the first recognition result, only the first call after start() counts.
+     */
+    public void onResult() {
+        if(timeToFirstResultMillis < 0 && state == State.READY) {
+            timeToFirstResultMillis = (System.nanoTime() - startTime) / 1000000;
+            Log.i(TAG, "Time to first result: "+timeToFirstResultMillis+" ms");
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    public long getWarmupMillis() {
+        return warmupMillis;
+    }
+
+    /**
+     * Models whose warm-up failed in the last start().
+     */
+    public int getFailures() {
+        return failures;
+    }
+
+    public long getTimeToFirstResultMillis() {
+        return timeToFirstResultMillis;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.vrpdrapp;
+
+import android.util.Log;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.BackgroundSubtractorMOG2;
+import org.opencv.video.Video;
+
+/**
+ * Tells whether a frame is worth running the detector on. A small gray copy of every frame goes through a
+ * MOG2 background subtractor (or a plain difference with the previous frame) and the gate opens when the
+ * foreground covers enough of the watched region, then stays open for a cooldown so a vehicle that stops in
+ * front of the camera is still read.
+ */
+public class MotionGate {
+
+    private static final String TAG = MotionGate.class.getSimpleName();
+
+    // gray level change of a foreground pixel for the frame difference
+    private static final double DIFFERENCE_THRESHOLD = 25;
+
+    private int width;
+    private float minForeground;
+    private int cooldownFrames;
+
+    // watched region, fractions of the frame
+    private float regionX = 0.0f;
+    private float regionY = 0.0f;
+    private float regionWidth = 1.0f;
+    private float regionHeight = 1.0f;
+
+    private BackgroundSubtractorMOG2 backgroundSubtractor;
+
+    private Mat resized = new Mat();
+    private Mat gray = new Mat();
+    private Mat prevGray = new Mat();
+    private Mat foreground = new Mat();
+
+    private int cooldown = 0;
+    private float lastForeground = 0.0f;
+
+    private long openFrames = 0;
+    private long closedFrames = 0;
+
+    /**
+     * @param width width of the copy the motion is computed on, the height keeps the frame aspect ratio
+     * @param minForeground fraction of the region that must be foreground to open the gate
+     * @param cooldownFrames frames the gate stays open after the last motion
+     * @param backgroundSubtraction MOG2 background model, otherwise difference with the previous frame
+     */
+    public MotionGate(int width, float minForeground, int cooldownFrames, boolean backgroundSubtraction) {
+        this.width = width;
+        this.minForeground = minForeground;
+        this.cooldownFrames = cooldownFrames;
+
+        if(backgroundSubtraction) {
+            try {
+                backgroundSubtractor = Video.createBackgroundSubtractorMOG2(500, 16, false);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to create the background subtractor, using frame difference instead", e);
+            }
+        }
+    }
+
+    /**
+     * Restricts the motion to a region (fractions of the frame), e.g. the bounding region of the LaneMask.
+     */
+    public void setRegion(float x, float y, float width, float height) {
+        regionX = x;
+        regionY = y;
+        regionWidth = width;
+        regionHeight = height;
+    }
+
+    /**
+     * Feeds a frame to the background model.
+     *
+     * @return true when the detector should run on this frame
+     */
+    public boolean update(Mat frame) {
+        double factor = (double) width / frame.cols();
+        Imgproc.resize(frame, resized, new Size(width, Math.max(1, Math.round(frame.rows() * factor))), 0, 0, Imgproc.INTER_AREA);
+        Imgproc.cvtColor(resized, gray, Imgproc.COLOR_RGB2GRAY);
+
+        if(backgroundSubtractor != null) {
+            backgroundSubtractor.apply(gray, foreground);
+        } else if(prevGray.empty()) {
+            gray.copyTo(prevGray);
+            return countOpen(true);
+        } else {
+            Core.absdiff(gray, prevGray, foreground);
+            Imgproc.threshold(foreground, foreground, DIFFERENCE_THRESHOLD, 255, Imgproc.THRESH_BINARY);
+            Mat swap = prevGray;
+            prevGray = gray;
+            gray = swap;
+        }
+
+        Rect region = new Rect(
+                Math.min(Math.round(regionX * foreground.cols()), foreground.cols() - 1),
+                Math.min(Math.round(regionY * foreground.rows()), foreground.rows() - 1),
+                Math.max(1, Math.round(regionWidth * foreground.cols())),
+                Math.max(1, Math.round(regionHeight * foreground.rows())));
+        region.width = Math.min(region.width, foreground.cols() - region.x);
+        region.height = Math.min(region.height, foreground.rows() - region.y);
+
+        Mat roi = foreground.submat(region);
+        lastForeground = (float) (Core.countNonZero(roi) / region.area());
+        roi.release();
+
+        if(lastForeground >= minForeground) {
+            cooldown = cooldownFrames;
+            return countOpen(true);
+        }
+
+        if(cooldown > 0) {
+            --cooldown;
+            return countOpen(true);
+        }
+
+        return countOpen(false);
+    }
+
+    private boolean countOpen(boolean open) {
+        if(open) {
+            ++openFrames;
+        } else {
+            ++closedFrames;
+        }
+
+        return open;
+    }
+
+    /**
+     * Foreground fraction of the region in the last frame.
+     */
+    public float getLastForeground() {
+        return lastForeground;
+    }
+
+    public long getOpenFrames() {
+        return openFrames;
+    }
+
+    public long getClosedFrames() {
+        return closedFrames;
+    }
+
+    /**
+     * Releases the frame buffers, the background model is kept and the gate can still be updated.
+     */
+    public void release() {
+        resized.release();
+        gray.release();
+        prevGray.release();
+        foreground.release();
+        cooldown = 0;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.vrpdrapp;
+
+/**
+ * OCR output of a CharacterBatch kept in primitive arrays: the top-k classes and softmax probabilities of every
+ * character plus an aggregate confidence. Instances are meant to be reused across calls.
+ */
+public class OcrResult {
+
+    public static final int REJECTED = -1;
+
+    private int topK;
+    private int count = 0;
+
+    // count x topK, best class first
+    private int[] classes;
+    private float[] probabilities;
+
+    public OcrResult(int capacity, int topK) {
+        this.topK = Math.max(1, topK);
+        ensureCapacity(Math.max(1, capacity));
+    }
+
+    public void reset(int count) {
+        ensureCapacity(count);
+        this.count = count;
+        for (int i = 0; i < count * topK; i++) {
+            classes[i] = REJECTED;
+            probabilities[i] = 0.0f;
+        }
+    }
+
+    /**
+     * Keeps the top-k classes of a probability distribution for a character.
+     */
+    public void set(int index, float[] distribution, int numClasses) {
+        int offset = index * topK;
+        for (int c = 0; c < numClasses; c++) {
+            float p = distribution[c];
+            if(classes[offset + topK - 1] != REJECTED && p <= probabilities[offset + topK - 1])
+                continue;
+
+            // insertion into the sorted top-k slots
+            int k = topK - 1;
+            while(k > 0 && (classes[offset + k - 1] == REJECTED || p > probabilities[offset + k - 1])) {
+                classes[offset + k] = classes[offset + k - 1];
+                probabilities[offset + k] = probabilities[offset + k - 1];
+                --k;
+            }
+            classes[offset + k] = c;
+            probabilities[offset + k] = p;
+        }
+    }
+
+    /**
+     * Copies already ranked top-k classes and probabilities for a character.
+     */
+    public void setTopK(int index, int[] sourceClasses, float[] sourceProbabilities, int sourceOffset, int sourceTopK) {
+        int offset = index * topK;
+        for (int k = 0; k < topK; k++) {
+            classes[offset + k] = k < sourceTopK ? sourceClasses[sourceOffset + k] : REJECTED;
+            probabilities[offset + k] = k < sourceTopK ? sourceProbabilities[sourceOffset + k] : 0.0f;
+        }
+    }
+
+    public void reject(int index) {
+        int offset = index * topK;
+        for (int k = 0; k < topK; k++) {
+            classes[offset + k] = REJECTED;
+            probabilities[offset + k] = 0.0f;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    public boolean isRejected(int index) {
+        return classes[index * topK] == REJECTED;
+    }
+
+    public int getClass(int index, int rank) {
+        return classes[index * topK + rank];
+    }
+
+    public float getProbability(int index, int rank) {
+        return probabilities[index * topK + rank];
+    }
+
+    public int[] getClasses() {
+        return classes;
+    }
+
+    public float[] getProbabilities() {
+        return probabilities;
+    }
+
+    public String getText() {
+        return getText(0, count);
+    }
+
+    /**
+     * Best label of each accepted character in [start, start + length).
+     */
+    public String getText(int start, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = start; i < start + length; i++) {
+            if(!isRejected(i)) {
+                text.append(EMNISTNet.CLASS_LABELS[classes[i * topK]]);
+            }
+        }
+
+        return text.toString();
+    }
+
+    public float getConfidence() {
+        return getConfidence(0, count);
+    }
+
+    /**
+     * Geometric mean of the top-1 probabilities of the accepted characters in [start, start + length),
+     * 0 when none was accepted.
+     */
+    public float getConfidence(int start, int length) {
+        double logSum = 0.0;
+        int accepted = 0;
+        for (int i = start; i < start + length; i++) {
+            if(!isRejected(i)) {
+                logSum += Math.log(Math.max(probabilities[i * topK], 1e-12f));
+                ++accepted;
+            }
+        }
+
+        return accepted == 0 ? 0.0f : (float) Math.exp(logSum / accepted);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(classes != null && classes.length >= capacity * topK)
+            return;
+
+        classes = new int[capacity * topK];
+        probabilities = new float[capacity * topK];
+    }
+}
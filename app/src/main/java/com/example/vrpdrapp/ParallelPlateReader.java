@@ -0,0 +1,98 @@
+package com.example.vrpdrapp;
+
+import android.util.Log;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Reads several plates of the same frame concurrently. Every worker owns its PlateReader, so no
+ * segmentation or OCR state is shared between threads.
+ */
+public class ParallelPlateReader {
+
+    private static final String TAG = ParallelPlateReader.class.getSimpleName();
+
+    private ExecutorService executor;
+
+    private BlockingQueue<PlateReader> readers;
+
+    public ParallelPlateReader(int workers, Supplier<PlateReader> readerFactory) {
+        workers = Math.max(1, workers);
+        this.executor = Executors.newFixedThreadPool(workers);
+        this.readers = new ArrayBlockingQueue<>(workers);
+        for (int i = 0; i < workers; i++) {
+            readers.add(readerFactory.get());
+        }
+    }
+
+    /**
+     * Reads every plate of the frame and waits for all of them.
+     *
+     * @param frame frame the plates were detected on, must not change until this call returns
+     * @param boundingBoxes plate boxes
+     * @param confidences receives the confidence of each reading, may be null
+     * @return plate readings in the same order as boundingBoxes, null where the read failed
+     */
+    public List<String> read(Mat frame, List<Rect> boundingBoxes, float[] confidences) {
+        List<Future<String>> futures = new ArrayList<>(boundingBoxes.size());
+        for (int i = 0; i < boundingBoxes.size(); i++) {
+            Rect boundingBox = boundingBoxes.get(i);
+            int plate = i;
+            futures.add(executor.submit(() -> {
+                PlateReader reader = readers.take();
+                Mat roi = new Mat(frame, boundingBox);
+                try {
+                    String reading = reader.read(roi);
+                    if(confidences != null) {
+                        confidences[plate] = reader.getConfidence(0);
+                    }
+                    return reading;
+                } finally {
+                    roi.release();
+                    readers.put(reader);
+                }
+            }));
+        }
+
+        List<String> results = new ArrayList<>(futures.size());
+        for (Future<String> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Failed to read plate", e.getCause());
+                results.add(null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(null);
+            }
+        }
+
+        return results;
+    }
+
+    public List<String> read(Mat frame, List<Rect> boundingBoxes) {
+        return read(frame, boundingBoxes, null);
+    }
+
+    /**
+     * Readers of every worker, must not be used while plates are being read.
+     */
+    public List<PlateReader> getReaders() {
+        return new ArrayList<>(readers);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
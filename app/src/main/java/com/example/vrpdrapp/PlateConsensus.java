@@ -0,0 +1,238 @@
+package com.example.vrpdrapp;
+
+/**
+ * Consensus reading of a tracked plate built from its last reads.
+ *
+ * The consensus length is the length with most votes and the reference is the most confident read of that
+ * length. Every read is aligned to the reference by edit distance and votes, weighted by its confidence, for
+ * the characters it aligns to each position, so a read that missed or split a character still counts for
+ * the rest of the plate. The plate is settled once the length and every position lead the runner-up by the
+ * margin, summed in confidence units.
+ */
+public class PlateConsensus {
+
+    private static final int MAX_LENGTH = 16;
+
+    private int maxReads;
+    private float margin;
+
+    // ring of the last maxReads reads, maxReads x MAX_LENGTH
+    private char[] reads;
+    private int[] lengths;
+    private float[] weights;
+    private int count = 0;
+    private int next = 0;
+    private int totalReads = 0;
+
+    private char[] consensus = new char[MAX_LENGTH];
+    private int consensusLength = 0;
+    private float minLead = 0.0f;
+    private boolean settled = false;
+    private String text;
+
+    // workspace
+    private float[] lengthVotes = new float[MAX_LENGTH + 1];
+    // candidate characters and their votes, MAX_LENGTH x maxReads
+    private char[] candidates;
+    private float[] candidateVotes;
+    private int[] numCandidates = new int[MAX_LENGTH];
+    private int[] distances = new int[(MAX_LENGTH + 1) * (MAX_LENGTH + 1)];
+    private char[] aligned = new char[MAX_LENGTH];
+
+    /**
+     * @param maxReads reads kept for the vote, older ones are forgotten
+     * @param margin vote lead (in confidence units) every position needs for the plate to be settled
+     */
+    public PlateConsensus(int maxReads, float margin) {
+        this.maxReads = Math.max(1, maxReads);
+        this.margin = margin;
+
+        reads = new char[this.maxReads * MAX_LENGTH];
+        lengths = new int[this.maxReads];
+        weights = new float[this.maxReads];
+        candidates = new char[MAX_LENGTH * this.maxReads];
+        candidateVotes = new float[MAX_LENGTH * this.maxReads];
+    }
+
+    /**
+     * Adds a read and updates the consensus.
+     *
+     * @param confidence weight of the read's votes
+     */
+    public void add(String reading, float confidence) {
+        if(reading == null || reading.isEmpty() || settled)
+            return;
+
+        int length = Math.min(reading.length(), MAX_LENGTH);
+        reading.getChars(0, length, reads, next * MAX_LENGTH);
+        lengths[next] = length;
+        weights[next] = Math.max(confidence, 1e-3f);
+        next = (next + 1) % maxReads;
+        count = Math.min(count + 1, maxReads);
+        ++totalReads;
+
+        vote();
+    }
+
+    private void vote() {
+        for (int l = 0; l <= MAX_LENGTH; l++) {
+            lengthVotes[l] = 0.0f;
+        }
+        for (int r = 0; r < count; r++) {
+            lengthVotes[lengths[r]] += weights[r];
+        }
+
+        int length = 0;
+        float lengthLead = 0.0f;
+        for (int l = 1; l <= MAX_LENGTH; l++) {
+            if(lengthVotes[l] > lengthVotes[length]) {
+                length = l;
+            }
+        }
+        for (int l = 1; l <= MAX_LENGTH; l++) {
+            if(l != length) {
+                lengthLead = Math.max(lengthLead, lengthVotes[l]);
+            }
+        }
+        lengthLead = lengthVotes[length] - lengthLead;
+
+        int reference = -1;
+        for (int r = 0; r < count; r++) {
+            if(lengths[r] == length && (reference < 0 || weights[r] > weights[reference])) {
+                reference = r;
+            }
+        }
+
+        for (int pos = 0; pos < length; pos++) {
+            numCandidates[pos] = 0;
+        }
+        for (int r = 0; r < count; r++) {
+            if(lengths[r] == length) {
+                System.arraycopy(reads, r * MAX_LENGTH, aligned, 0, length);
+            } else {
+                align(r, reference, length);
+            }
+
+            for (int pos = 0; pos < length; pos++) {
+                if(aligned[pos] != 0) {
+                    addVote(pos, aligned[pos], weights[r]);
+                }
+            }
+        }
+
+        minLead = lengthLead;
+        for (int pos = 0; pos < length; pos++) {
+            int offset = pos * maxReads;
+            int best = offset;
+            float runnerUp = 0.0f;
+            for (int k = offset + 1; k < offset + numCandidates[pos]; k++) {
+                if(candidateVotes[k] > candidateVotes[best]) {
+                    runnerUp = Math.max(runnerUp, candidateVotes[best]);
+                    best = k;
+                } else {
+                    runnerUp = Math.max(runnerUp, candidateVotes[k]);
+                }
+            }
+
+            consensus[pos] = candidates[best];
+            minLead = Math.min(minLead, candidateVotes[best] - runnerUp);
+        }
+
+        consensusLength = length;
+        text = new String(consensus, 0, length);
+        settled = minLead >= margin;
+    }
+
+    private void addVote(int pos, char c, float weight) {
+        int offset = pos * maxReads;
+        int k = offset;
+        while (k < offset + numCandidates[pos] && candidates[k] != c) {
+            ++k;
+        }
+        if(k == offset + numCandidates[pos]) {
+            candidates[k] = c;
+            candidateVotes[k] = 0.0f;
+            ++numCandidates[pos];
+        }
+        candidateVotes[k] += weight;
+    }
+
+    /**
+     * Aligns read r to the reference by edit distance, aligned[pos] receives the character of the read
+     * matched or substituted at each reference position, 0 where the read has none.
+     */
+    private void align(int r, int reference, int referenceLength) {
+        int offset = r * MAX_LENGTH;
+        int refOffset = reference * MAX_LENGTH;
+        int length = lengths[r];
+        int stride = referenceLength + 1;
+
+        for (int i = 0; i <= length; i++) {
+            distances[i * stride] = i;
+        }
+        for (int j = 0; j <= referenceLength; j++) {
+            distances[j] = j;
+        }
+        for (int i = 1; i <= length; i++) {
+            for (int j = 1; j <= referenceLength; j++) {
+                int substitution = distances[(i - 1) * stride + j - 1]
+                        + (reads[offset + i - 1] == reads[refOffset + j - 1] ? 0 : 1);
+                int deletion = distances[(i - 1) * stride + j] + 1;
+                int insertion = distances[i * stride + j - 1] + 1;
+                distances[i * stride + j] = Math.min(substitution, Math.min(deletion, insertion));
+            }
+        }
+
+        for (int j = 0; j < referenceLength; j++) {
+            aligned[j] = 0;
+        }
+
+        int i = length;
+        int j = referenceLength;
+        while (i > 0 && j > 0) {
+            int d = distances[i * stride + j];
+            int cost = reads[offset + i - 1] == reads[refOffset + j - 1] ? 0 : 1;
+            if(d == distances[(i - 1) * stride + j - 1] + cost) {
+                aligned[j - 1] = reads[offset + i - 1];
+                --i;
+                --j;
+            } else if(d == distances[(i - 1) * stride + j] + 1) {
+                --i;
+            } else {
+                --j;
+            }
+        }
+    }
+
+    /**
+     * Consensus reading, null before the first read.
+     */
+    public String getText() {
+        return text;
+    }
+
+    public int getLength() {
+        return consensusLength;
+    }
+
+    /**
+     * True once the consensus leads by the margin everywhere, later reads are ignored.
+     */
+    public boolean isSettled() {
+        return settled;
+    }
+
+    /**
+     * Smallest vote lead of the length and the positions of the consensus.
+     */
+    public float getLead() {
+        return minLead;
+    }
+
+    /**
+     * Reads voted since the track started, including the forgotten ones.
+     */
+    public int getReads() {
+        return totalReads;
+    }
+}
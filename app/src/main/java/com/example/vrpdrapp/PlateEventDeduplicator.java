@@ -0,0 +1,323 @@
+package com.example.vrpdrapp;
+
+/**
+ * Reports each vehicle once: a plate read is a new event unless the same plate, or one within edit
+ * distance 1 of it, was seen in the last window milliseconds. Every sighting of a plate extends its window,
+ * so a vehicle standing in front of the camera is not reported again.
+ *
+ * Plates are packed in a long (4 bit length, then 6 bits per character, up to 10 characters) and kept in
+ * an open addressing hash table with linear probing; the neighbours within edit distance 1 are generated by
+ * editing the packed value, so reads don't allocate. Plates longer than 10 characters only match exactly.
+ */
+public class PlateEventDeduplicator {
+
+    private static final int MAX_PACKED_LENGTH = 10;
+    private static final int LENGTH_BITS = 4;
+    private static final int CHARACTER_BITS = 6;
+    private static final long CHARACTER_MASK = (1L << CHARACTER_BITS) - 1;
+    // codes 1..63, 0 marks an empty position
+    private static final int NUM_CODES = 63;
+    // length field of the hashed plates longer than MAX_PACKED_LENGTH
+    private static final long LONG_PLATE = 15;
+
+    private long windowMillis;
+
+    // hash table, 0 marks an empty slot (a packed plate always has a length)
+    private long[] keys;
+    private long[] lastSeen;
+    private int mask;
+    private int size = 0;
+
+    // sightings in time order, used to expire the table
+    private long[] queueKeys;
+    private long[] queueTimes;
+    private int queueHead = 0;
+    private int queueSize = 0;
+
+    private long accepted = 0;
+    private long suppressed = 0;
+
+    /**
+     * @param windowMillis time a plate suppresses its duplicates after it was last seen
+     * @param expectedPlates distinct plates expected within a window, the table grows past it
+     */
+    public PlateEventDeduplicator(long windowMillis, int expectedPlates) {
+        this.windowMillis = windowMillis;
+
+        int capacity = Integer.highestOneBit(Math.max(16, 2 * expectedPlates) - 1) << 1;
+        keys = new long[capacity];
+        lastSeen = new long[capacity];
+        mask = capacity - 1;
+
+        queueKeys = new long[capacity];
+        queueTimes = new long[capacity];
+    }
+
+    /**
+     * Records a plate read.
+     *
+     * @param timeMillis time of the read, must not decrease between calls (e.g. the frame time of a replay)
+     * @return true when the read is a new event that should be reported, false for a duplicate
+     */
+    public boolean accept(String plate, long timeMillis) {
+        if(plate == null || plate.isEmpty())
+            return false;
+
+        expire(timeMillis);
+
+        long key = pack(plate);
+        boolean duplicate = refresh(key, timeMillis);
+        if(!duplicate && length(key) != LONG_PLATE) {
+            duplicate = refreshNeighbours(key, timeMillis);
+        }
+
+        if(duplicate) {
+            ++suppressed;
+            return false;
+        }
+
+        put(key, timeMillis);
+        ++accepted;
+        return true;
+    }
+
+    /**
+     * Refreshes every stored plate at edit distance 1 of key, true when there was any.
+     */
+    private boolean refreshNeighbours(long key, long timeMillis) {
+        int length = (int) length(key);
+        boolean found = false;
+
+        // substitutions
+        for (int i = 0; i < length; i++) {
+            long code = character(key, i);
+            for (long c = 1; c <= NUM_CODES; c++) {
+                if(c != code) {
+                    found |= refresh(withCharacter(key, i, c), timeMillis);
+                }
+            }
+        }
+
+        // deletions
+        for (int i = 0; length > 1 && i < length; i++) {
+            found |= refresh(deleteCharacter(key, i), timeMillis);
+        }
+
+        // insertions
+        for (int i = 0; length < MAX_PACKED_LENGTH && i <= length; i++) {
+            for (long c = 1; c <= NUM_CODES; c++) {
+                found |= refresh(insertCharacter(key, i, c), timeMillis);
+            }
+        }
+
+        return found;
+    }
+
+    private boolean refresh(long key, long timeMillis) {
+        int slot = find(key);
+        if(slot < 0)
+            return false;
+
+        lastSeen[slot] = timeMillis;
+        enqueue(key, timeMillis);
+        return true;
+    }
+
+    private void put(long key, long timeMillis) {
+        if(2 * (size + 1) > keys.length) {
+            rehash(2 * keys.length);
+        }
+
+        int slot = home(key);
+        while (keys[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        lastSeen[slot] = timeMillis;
+        ++size;
+
+        enqueue(key, timeMillis);
+    }
+
+    private int find(long key) {
+        int slot = home(key);
+        while (keys[slot] != 0) {
+            if(keys[slot] == key)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Empties a slot and shifts back the entries of its probe chain (no tombstones).
+     */
+    private void remove(int slot) {
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if(keys[next] == 0)
+                break;
+
+            int home = home(keys[next]);
+            // the entry can move to the hole when its home is not within (hole, next]
+            boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if(movable) {
+                keys[hole] = keys[next];
+                lastSeen[hole] = lastSeen[next];
+                hole = next;
+            }
+        }
+
+        keys[hole] = 0;
+        --size;
+    }
+
+    private void expire(long timeMillis) {
+        while (queueSize > 0 && queueTimes[queueHead] <= timeMillis - windowMillis) {
+            long key = queueKeys[queueHead];
+            long time = queueTimes[queueHead];
+            queueHead = (queueHead + 1) % queueKeys.length;
+            --queueSize;
+
+            // a plate seen again later has a newer sighting in the queue
+            int slot = find(key);
+            if(slot >= 0 && lastSeen[slot] <= time) {
+                remove(slot);
+            }
+        }
+    }
+
+    private void enqueue(long key, long timeMillis) {
+        if(queueSize == queueKeys.length) {
+            long[] newKeys = new long[2 * queueKeys.length];
+            long[] newTimes = new long[2 * queueTimes.length];
+            for (int i = 0; i < queueSize; i++) {
+                newKeys[i] = queueKeys[(queueHead + i) % queueKeys.length];
+                newTimes[i] = queueTimes[(queueHead + i) % queueTimes.length];
+            }
+            queueKeys = newKeys;
+            queueTimes = newTimes;
+            queueHead = 0;
+        }
+
+        int tail = (queueHead + queueSize) % queueKeys.length;
+        queueKeys[tail] = key;
+        queueTimes[tail] = timeMillis;
+        ++queueSize;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldLastSeen = lastSeen;
+
+        keys = new long[capacity];
+        lastSeen = new long[capacity];
+        mask = capacity - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if(oldKeys[i] != 0) {
+                int slot = home(oldKeys[i]);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                lastSeen[slot] = oldLastSeen[i];
+            }
+        }
+    }
+
+    private int home(long key) {
+        // 64 bit finalizer of MurmurHash3
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    static long pack(String plate) {
+        int length = plate.length();
+        if(length > MAX_PACKED_LENGTH) {
+            // FNV-1a of the characters above the length field
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < length; i++) {
+                hash ^= plate.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            return (hash << LENGTH_BITS) | LONG_PLATE;
+        }
+
+        long key = length;
+        for (int i = 0; i < length; i++) {
+            key |= (long) code(plate.charAt(i)) << (LENGTH_BITS + CHARACTER_BITS * i);
+        }
+
+        return key;
+    }
+
+    private static int code(char c) {
+        if(c >= '0' && c <= '9')
+            return 1 + c - '0';
+        if(c >= 'A' && c <= 'Z')
+            return 11 + c - 'A';
+        if(c >= 'a' && c <= 'z')
+            return 37 + c - 'a';
+
+        return NUM_CODES;
+    }
+
+    private static long length(long key) {
+        return key & ((1L << LENGTH_BITS) - 1);
+    }
+
+    private static long character(long key, int i) {
+        return (key >>> (LENGTH_BITS + CHARACTER_BITS * i)) & CHARACTER_MASK;
+    }
+
+    private static long withCharacter(long key, int i, long code) {
+        int shift = LENGTH_BITS + CHARACTER_BITS * i;
+        return (key & ~(CHARACTER_MASK << shift)) | (code << shift);
+    }
+
+    static long deleteCharacter(long key, int i) {
+        int shift = LENGTH_BITS + CHARACTER_BITS * i;
+        long low = key & ((1L << shift) - 1);
+        long high = shift + CHARACTER_BITS < 64 ? (key >>> (shift + CHARACTER_BITS)) << shift : 0;
+        return ((low & ~((1L << LENGTH_BITS) - 1)) | high) | (length(key) - 1);
+    }
+
+    static long insertCharacter(long key, int i, long code) {
+        int shift = LENGTH_BITS + CHARACTER_BITS * i;
+        long low = key & ((1L << shift) - 1);
+        long high = shift + CHARACTER_BITS < 64 ? (key >>> shift) << (shift + CHARACTER_BITS) : 0;
+        return ((low & ~((1L << LENGTH_BITS) - 1)) | (code << shift) | high) | (length(key) + 1);
+    }
+
+    /**
+     * Plates currently suppressing their duplicates.
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public long getSuppressed() {
+        return suppressed;
+    }
+
+    public void clear() {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 0;
+        }
+        size = 0;
+        queueHead = 0;
+        queueSize = 0;
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.vrpdrapp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plate syntax compiled to a small DFA over the class indices of EMNISTNet.CLASS_LABELS.
+ *
+ * Patterns are sequences of slots: L (upper case letter), D (digit), A (upper case letter or digit), a bracket
+ * set such as [A-HJ-Z] or [0-9O], or any other label matched literally. A slot may be followed by ? (optional),
+ * {n} or {n,m}. For example "LLLDDDD", "L{3}D[A-Z0-9]D{2}" or "D{3}L{2,3}".
+ */
+public class PlateFormat {
+
+    public static final int NO_TRANSITION = -1;
+
+    private static final int MAX_SLOTS = 63;
+
+    private String name;
+
+    private int numClasses;
+    private int numStates;
+    // numStates x numClasses, NO_TRANSITION when the class is not allowed
+    private int[] transitions;
+    private boolean[] accepting;
+    private int minLength;
+    private int maxLength;
+
+    private PlateFormat(String name) {
+        this.name = name;
+    }
+
+    public static PlateFormat compile(String name, String pattern) {
+        List<Long> slotMasks = new ArrayList<>();
+        List<Boolean> slotOptional = new ArrayList<>();
+
+        int i = 0;
+        while(i < pattern.length()) {
+            long mask;
+            char ch = pattern.charAt(i);
+            if(ch == '[') {
+                int end = pattern.indexOf(']', i);
+                if(end < 0)
+                    throw new IllegalArgumentException("Unterminated class in plate pattern "+pattern);
+                mask = parseSet(pattern.substring(i + 1, end));
+                i = end + 1;
+            } else if(ch == 'L') {
+                mask = parseSet("A-Z");
+                ++i;
+            } else if(ch == 'D') {
+                mask = parseSet("0-9");
+                ++i;
+            } else if(ch == 'A') {
+                mask = parseSet("A-Z0-9");
+                ++i;
+            } else {
+                mask = classMask(ch);
+                ++i;
+            }
+
+            int min = 1, max = 1;
+            if(i < pattern.length() && pattern.charAt(i) == '?') {
+                min = 0;
+                ++i;
+            } else if(i < pattern.length() && pattern.charAt(i) == '{') {
+                int end = pattern.indexOf('}', i);
+                if(end < 0)
+                    throw new IllegalArgumentException("Unterminated quantifier in plate pattern "+pattern);
+                String[] bounds = pattern.substring(i + 1, end).split(",");
+                min = Integer.parseInt(bounds[0].trim());
+                max = bounds.length > 1 ? Integer.parseInt(bounds[1].trim()) : min;
+                i = end + 1;
+            }
+
+            for (int k = 0; k < max; k++) {
+                slotMasks.add(mask);
+                slotOptional.add(k >= min);
+            }
+        }
+
+        if(slotMasks.size() > MAX_SLOTS)
+            throw new IllegalArgumentException("Plate pattern too long: "+pattern);
+
+        PlateFormat format = new PlateFormat(name);
+        format.build(slotMasks, slotOptional);
+
+        return format;
+    }
+
+    private static long parseSet(String set) {
+        long mask = 0L;
+        for (int i = 0; i < set.length(); i++) {
+            char from = set.charAt(i);
+            char to = from;
+            if(i + 2 < set.length() && set.charAt(i + 1) == '-') {
+                to = set.charAt(i + 2);
+                i += 2;
+            }
+            for (char ch = from; ch <= to; ch++) {
+                mask |= classMask(ch);
+            }
+        }
+
+        return mask;
+    }
+
+    private static long classMask(char ch) {
+        String label = String.valueOf(ch);
+        for (int c = 0; c < EMNISTNet.CLASS_LABELS.length; c++) {
+            if(EMNISTNet.CLASS_LABELS[c].equals(label))
+                return 1L << c;
+        }
+
+        // labels the classifier can't produce never match
+        return 0L;
+    }
+
+    /**
+     * Subset construction of the DFA. NFA state i means "before slot i", optional slots can be skipped.
+     */
+    private void build(List<Long> slotMasks, List<Boolean> slotOptional) {
+        int slots = slotMasks.size();
+        numClasses = EMNISTNet.CLASS_LABELS.length;
+
+        Map<Long, Integer> stateIds = new HashMap<>();
+        List<Long> states = new ArrayList<>();
+        List<int[]> rows = new ArrayList<>();
+
+        long startSet = closure(1L, slotOptional);
+        stateIds.put(startSet, 0);
+        states.add(startSet);
+
+        for (int s = 0; s < states.size(); s++) {
+            long set = states.get(s);
+            int[] row = new int[numClasses];
+            for (int c = 0; c < numClasses; c++) {
+                long next = 0L;
+                for (int slot = 0; slot < slots; slot++) {
+                    if((set & (1L << slot)) != 0 && (slotMasks.get(slot) & (1L << c)) != 0) {
+                        next |= 1L << (slot + 1);
+                    }
+                }
+
+                if(next == 0L) {
+                    row[c] = NO_TRANSITION;
+                    continue;
+                }
+
+                next = closure(next, slotOptional);
+                Integer id = stateIds.get(next);
+                if(id == null) {
+                    id = states.size();
+                    stateIds.put(next, id);
+                    states.add(next);
+                }
+                row[c] = id;
+            }
+            rows.add(row);
+        }
+
+        numStates = states.size();
+        transitions = new int[numStates * numClasses];
+        accepting = new boolean[numStates];
+        for (int s = 0; s < numStates; s++) {
+            System.arraycopy(rows.get(s), 0, transitions, s * numClasses, numClasses);
+            accepting[s] = (states.get(s) & (1L << slots)) != 0;
+        }
+
+        maxLength = slots;
+        minLength = 0;
+        for (boolean optional : slotOptional) {
+            if(!optional) {
+                ++minLength;
+            }
+        }
+    }
+
+    private static long closure(long set, List<Boolean> slotOptional) {
+        for (int slot = 0; slot < slotOptional.size(); slot++) {
+            if((set & (1L << slot)) != 0 && slotOptional.get(slot)) {
+                set |= 1L << (slot + 1);
+            }
+        }
+
+        return set;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getNumStates() {
+        return numStates;
+    }
+
+    public int getStartState() {
+        return 0;
+    }
+
+    public int next(int state, int classIndex) {
+        return transitions[state * numClasses + classIndex];
+    }
+
+    public boolean isAccepting(int state) {
+        return accepting[state];
+    }
+
+    public int getMinLength() {
+        return minLength;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.vrpdrapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks, over the top-k candidates of every character, the most probable plate string accepted by one of the
+ * configured plate formats. Decoding is a Viterbi pass over each format DFA using preallocated buffers, so it
+ * creates no garbage apart from the returned text. Not thread safe.
+ */
+public class PlateGrammarDecoder {
+
+    private List<PlateFormat> formats = new ArrayList<>();
+
+    private int maxLength;
+    private int maxStates = 0;
+
+    // (maxLength + 1) x maxStates
+    private float[] scores;
+    private int[] backState;
+    private int[] backRank;
+    private int[] positions;
+    private int[] path;
+
+    private int[] bestClasses;
+    private int bestLength = -1;
+    private float bestScore;
+    private PlateFormat bestFormat;
+
+    private StringBuilder text;
+
+    public PlateGrammarDecoder(int maxLength) {
+        this.maxLength = maxLength;
+        positions = new int[maxLength];
+        path = new int[maxLength];
+        bestClasses = new int[maxLength];
+        text = new StringBuilder(maxLength);
+        allocate();
+    }
+
+    public PlateGrammarDecoder addFormat(PlateFormat format) {
+        formats.add(format);
+        if(format.getNumStates() > maxStates) {
+            maxStates = format.getNumStates();
+            allocate();
+        }
+
+        return this;
+    }
+
+    public PlateGrammarDecoder addFormat(String name, String pattern) {
+        return addFormat(PlateFormat.compile(name, pattern));
+    }
+
+    private void allocate() {
+        int size = (maxLength + 1) * Math.max(1, maxStates);
+        scores = new float[size];
+        backState = new int[size];
+        backRank = new int[size];
+    }
+
+    /**
+     * Decodes the characters [start, start + length) of a result, rejected characters are ignored.
+     *
+     * @return true when a reading matches one of the formats, see getClasses(), getLength() and getText()
+     */
+    public boolean decode(OcrResult result, int start, int length) {
+        int n = 0;
+        for (int i = start; i < start + length && n < maxLength; i++) {
+            if(!result.isRejected(i)) {
+                positions[n++] = i;
+            }
+        }
+
+        bestLength = -1;
+        bestScore = Float.NEGATIVE_INFINITY;
+        bestFormat = null;
+
+        for (PlateFormat format : formats) {
+            if(n < format.getMinLength() || n > format.getMaxLength())
+                continue;
+
+            float score = viterbi(format, result, n);
+            if(score > bestScore) {
+                bestScore = score;
+                bestFormat = format;
+                bestLength = n;
+                System.arraycopy(path, 0, bestClasses, 0, n);
+            }
+        }
+
+        return bestLength >= 0;
+    }
+
+    private float viterbi(PlateFormat format, OcrResult result, int n) {
+        int states = format.getNumStates();
+        for (int i = 0; i < (n + 1) * states; i++) {
+            scores[i] = Float.NEGATIVE_INFINITY;
+        }
+        scores[format.getStartState()] = 0.0f;
+
+        for (int pos = 0; pos < n; pos++) {
+            int index = positions[pos];
+            for (int s = 0; s < states; s++) {
+                float score = scores[pos * states + s];
+                if(score == Float.NEGATIVE_INFINITY)
+                    continue;
+
+                for (int rank = 0; rank < result.getTopK(); rank++) {
+                    int c = result.getClass(index, rank);
+                    if(c == OcrResult.REJECTED)
+                        break;
+
+                    int next = format.next(s, c);
+                    if(next == PlateFormat.NO_TRANSITION)
+                        continue;
+
+                    float candidate = score + (float) Math.log(Math.max(result.getProbability(index, rank), 1e-12f));
+                    int cell = (pos + 1) * states + next;
+                    if(candidate > scores[cell]) {
+                        scores[cell] = candidate;
+                        backState[cell] = s;
+                        backRank[cell] = rank;
+                    }
+                }
+            }
+        }
+
+        int bestState = -1;
+        float best = Float.NEGATIVE_INFINITY;
+        for (int s = 0; s < states; s++) {
+            if(format.isAccepting(s) && scores[n * states + s] > best) {
+                best = scores[n * states + s];
+                bestState = s;
+            }
+        }
+
+        if(bestState < 0)
+            return Float.NEGATIVE_INFINITY;
+
+        for (int pos = n, s = bestState; pos > 0; pos--) {
+            int cell = pos * states + s;
+            path[pos - 1] = result.getClass(positions[pos - 1], backRank[cell]);
+            s = backState[cell];
+        }
+
+        return best;
+    }
+
+    public int getLength() {
+        return bestLength;
+    }
+
+    public int[] getClasses() {
+        return bestClasses;
+    }
+
+    /**
+     * Probability of the decoded reading (product of the chosen character probabilities).
+     */
+    public float getProbability() {
+        return bestLength >= 0 ? (float) Math.exp(bestScore) : 0.0f;
+    }
+
+    public PlateFormat getFormat() {
+        return bestFormat;
+    }
+
+    public String getText() {
+        text.setLength(0);
+        for (int i = 0; i < bestLength; i++) {
+            text.append(EMNISTNet.CLASS_LABELS[bestClasses[i]]);
+        }
+
+        return text.toString();
+    }
+}
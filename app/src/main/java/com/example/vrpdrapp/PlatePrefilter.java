@@ -0,0 +1,278 @@
+package com.example.vrpdrapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.CascadeClassifier;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cheap first stage that finds plate candidates on a downscaled gray frame, so Yolo only runs on frames, and
+ * optionally only around the regions, that may hold a plate.
+ *
+ * Uses an LBP/Haar cascade when its asset can be loaded, otherwise an edge density heuristic: plates are
+ * compact regions dense in vertical strokes, so the horizontal gradient is thresholded, closed with a wide
+ * kernel and the blobs with a plate-like aspect ratio are kept.
+ *
+ * Every auditInterval-th rejected frame still goes through Yolo to estimate the plates the prefilter misses.
+ */
+public class PlatePrefilter {
+
+    private static final String TAG = PlatePrefilter.class.getSimpleName();
+
+    private static final float MIN_ASPECT_RATIO = 1.5f;
+    private static final float MAX_ASPECT_RATIO = 7.0f;
+    // fraction of the small frame height
+    private static final float MIN_HEIGHT = 0.02f;
+    private static final float MAX_HEIGHT = 0.3f;
+    // fraction of edge pixels of a candidate
+    private static final float MIN_EDGE_DENSITY = 0.3f;
+
+    private int width;
+    private int auditInterval;
+
+    private CascadeClassifier cascade;
+
+    private Mat resized = new Mat();
+    private Mat gray = new Mat();
+    private Mat gradient = new Mat();
+    private Mat edges = new Mat();
+    private Mat closed = new Mat();
+    private Mat kernel;
+    private Mat hierarchy = new Mat();
+    private MatOfRect cascadeDetections = new MatOfRect();
+    private List<MatOfPoint> contours = new ArrayList<>();
+
+    private List<Rect> candidates = new ArrayList<>();
+
+    private long frames = 0;
+    private long rejectedFrames = 0;
+    private long audits = 0;
+    private long missedPlates = 0;
+    private long hits = 0;
+    private long falseAlarms = 0;
+    private long prefilterNanos = 0;
+    private long detectionNanos = 0;
+    private long detectorRuns = 0;
+
+    /**
+     * @param cascadeAsset cascade model asset, null or missing for the edge density heuristic
+     * @param width width of the gray copy the candidates are searched on
+     * @param auditInterval one in auditInterval rejected frames is still detected, 0 disables the audits
+     */
+    public PlatePrefilter(Context context, String cascadeAsset, int width, int auditInterval) {
+        this.width = width;
+        this.auditInterval = auditInterval;
+
+        if(cascadeAsset != null) {
+            try {
+                CascadeClassifier classifier = new CascadeClassifier(ModelCache.getInstance(context).getPath(cascadeAsset));
+                if(!classifier.empty()) {
+                    cascade = classifier;
+                } else {
+                    Log.w(TAG, "Failed to load cascade "+cascadeAsset+", using edge density instead");
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Cascade "+cascadeAsset+" not available, using edge density instead");
+            }
+        }
+
+        kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(Math.max(3, width / 40), 3));
+    }
+
+    /**
+     * Searches a frame for plate candidates.
+     *
+     * @return candidate regions in frame coordinates (the list is reused), empty when the frame can skip the
+     * detector, see shouldDetect()
+     */
+    public List<Rect> findCandidates(Mat frame) {
+        long start = System.nanoTime();
+        candidates.clear();
+
+        double factor = (double) width / frame.cols();
+        Imgproc.resize(frame, resized, new Size(width, Math.max(1, Math.round(frame.rows() * factor))), 0, 0, Imgproc.INTER_AREA);
+        Imgproc.cvtColor(resized, gray, Imgproc.COLOR_RGB2GRAY);
+
+        if(cascade != null) {
+            cascade.detectMultiScale(gray, cascadeDetections, 1.1, 3, 0,
+                    new Size(gray.rows() * MIN_HEIGHT * MIN_ASPECT_RATIO, gray.rows() * MIN_HEIGHT), new Size());
+            for (Rect rect : cascadeDetections.toArray()) {
+                candidates.add(toFrame(rect, factor, frame));
+            }
+        } else {
+            findEdgeCandidates(factor, frame);
+        }
+
+        ++frames;
+        prefilterNanos += System.nanoTime() - start;
+
+        return candidates;
+    }
+
+    private void findEdgeCandidates(double factor, Mat frame) {
+        Imgproc.Sobel(gray, gradient, CvType.CV_16S, 1, 0);
+        Core.convertScaleAbs(gradient, edges);
+        Imgproc.threshold(edges, edges, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+        Imgproc.morphologyEx(edges, closed, Imgproc.MORPH_CLOSE, kernel);
+
+        for (MatOfPoint contour : contours) {
+            contour.release();
+        }
+        contours.clear();
+        Imgproc.findContours(closed, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+
+        for (MatOfPoint contour : contours) {
+            Rect rect = Imgproc.boundingRect(contour);
+            float aspectRatio = (float) rect.width / rect.height;
+            if(aspectRatio < MIN_ASPECT_RATIO || aspectRatio > MAX_ASPECT_RATIO
+                    || rect.height < MIN_HEIGHT * gray.rows() || rect.height > MAX_HEIGHT * gray.rows())
+                continue;
+
+            Mat roi = edges.submat(rect);
+            float density = (float) (Core.countNonZero(roi) / rect.area());
+            roi.release();
+            if(density >= MIN_EDGE_DENSITY) {
+                candidates.add(toFrame(rect, factor, frame));
+            }
+        }
+    }
+
+    private static Rect toFrame(Rect rect, double factor, Mat frame) {
+        int x = (int) (rect.x / factor);
+        int y = (int) (rect.y / factor);
+        int w = Math.min((int) Math.ceil(rect.width / factor), frame.cols() - x);
+        int h = Math.min((int) Math.ceil(rect.height / factor), frame.rows() - y);
+        return new Rect(x, y, w, h);
+    }
+
+    /**
+     * Decides whether the detector runs on the last frame given to findCandidates().
+     *
+     * @return true when there are candidates or the frame is audited
+     */
+    public boolean shouldDetect() {
+        if(!candidates.isEmpty())
+            return true;
+
+        ++rejectedFrames;
+        if(auditInterval > 0 && rejectedFrames % auditInterval == 0) {
+            ++audits;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Records the outcome of the detector on a frame that shouldDetect().
+     *
+     * @param plates plates the detector found
+     * @param nanos time the detector took
+     */
+    public void onDetection(int plates, long nanos) {
+        detectionNanos += nanos;
+        ++detectorRuns;
+
+        if(candidates.isEmpty()) {
+            missedPlates += plates;
+        } else if(plates > 0) {
+            ++hits;
+        } else {
+            ++falseAlarms;
+        }
+    }
+
+    /**
+     * Union of the candidates grown by margin (fraction of their size) on each side, clipped to the frame.
+     */
+    public Rect getCandidateRegion(Mat frame, float margin) {
+        int x0 = Integer.MAX_VALUE;
+        int y0 = Integer.MAX_VALUE;
+        int x1 = Integer.MIN_VALUE;
+        int y1 = Integer.MIN_VALUE;
+        for (Rect rect : candidates) {
+            int dx = (int) (rect.width * margin);
+            int dy = (int) (rect.height * margin);
+            x0 = Math.min(x0, rect.x - dx);
+            y0 = Math.min(y0, rect.y - dy);
+            x1 = Math.max(x1, rect.x + rect.width + dx);
+            y1 = Math.max(y1, rect.y + rect.height + dy);
+        }
+
+        x0 = Math.max(x0, 0);
+        y0 = Math.max(y0, 0);
+        x1 = Math.min(x1, frame.cols());
+        y1 = Math.min(y1, frame.rows());
+        return new Rect(x0, y0, Math.max(x1 - x0, 0), Math.max(y1 - y0, 0));
+    }
+
+    public boolean usesCascade() {
+        return cascade != null;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Frames without candidates, including the audited ones.
+     */
+    public long getRejectedFrames() {
+        return rejectedFrames;
+    }
+
+    /**
+     * Fraction of the frames with candidates where the detector found a plate.
+     */
+    public float getHitRate() {
+        return hits + falseAlarms == 0 ? 0.0f : (float) hits / (hits + falseAlarms);
+    }
+
+    /**
+     * Plates found by the detector per audited frame, an estimate of the plates lost per rejected frame.
+     */
+    public float getMissRate() {
+        return audits == 0 ? 0.0f : (float) missedPlates / audits;
+    }
+
+    public double getAveragePrefilterMillis() {
+        return frames == 0 ? 0.0 : prefilterNanos / 1e6 / frames;
+    }
+
+    /**
+     * Detector time saved on the skipped frames minus the time spent in the prefilter, in milliseconds.
+     */
+    public double getTimeSavedMillis() {
+        if(detectorRuns == 0)
+            return 0.0;
+
+        double averageDetection = (double) detectionNanos / detectorRuns;
+        return ((rejectedFrames - audits) * averageDetection - prefilterNanos) / 1e6;
+    }
+
+    public void release() {
+        resized.release();
+        gray.release();
+        gradient.release();
+        edges.release();
+        closed.release();
+        kernel.release();
+        hierarchy.release();
+        cascadeDetections.release();
+        for (MatOfPoint contour : contours) {
+            contour.release();
+        }
+    }
+}
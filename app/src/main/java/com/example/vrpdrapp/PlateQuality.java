@@ -0,0 +1,130 @@
+package com.example.vrpdrapp;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Cheap quality score in [0, 1] of a plate crop, used to send only the best frames of a plate to OCR.
+ *
+ * The crop is scaled to a fixed height so the terms don't depend on the plate distance, then scored on
+ * focus (variance of the Laplacian), exposure (spread between the 5th and 95th gray level percentiles)
+ * and size (plates smaller than minHeight pixels lose their characters on segmentation).
+ */
+public class PlateQuality {
+
+    private static final int SCORE_HEIGHT = 32;
+
+    // Laplacian variance of a half sharp crop
+    private static final double FOCUS_SCALE = 200.0;
+
+    private int minHeight;
+
+    private Mat resized = new Mat();
+    private Mat gray = new Mat();
+    private Mat laplacian = new Mat();
+    private MatOfDouble mean = new MatOfDouble();
+    private MatOfDouble stdDev = new MatOfDouble();
+
+    private byte[] pixels = new byte[0];
+    private int[] histogram = new int[256];
+
+    private float focus;
+    private float exposure;
+    private float size;
+
+    /**
+     * @param minHeight plate height in frame pixels from which the size no longer lowers the score
+     */
+    public PlateQuality(int minHeight) {
+        this.minHeight = minHeight;
+    }
+
+    public float score(Mat frame, Rect box) {
+        if(box.width <= 0 || box.height <= 0)
+            return 0.0f;
+
+        Mat roi = new Mat(frame, box);
+        int width = Math.max(1, Math.round((float) box.width * SCORE_HEIGHT / box.height));
+        Imgproc.resize(roi, resized, new Size(width, SCORE_HEIGHT), 0, 0, Imgproc.INTER_AREA);
+        roi.release();
+        Imgproc.cvtColor(resized, gray, Imgproc.COLOR_RGB2GRAY);
+
+        Imgproc.Laplacian(gray, laplacian, CvType.CV_16S);
+        Core.meanStdDev(laplacian, mean, stdDev);
+        double variance = stdDev.get(0, 0)[0] * stdDev.get(0, 0)[0];
+        focus = (float) (variance / (variance + FOCUS_SCALE));
+
+        exposure = percentileSpread(0.05f, 0.95f) / 255.0f;
+
+        size = Math.min(1.0f, (float) box.height / minHeight);
+
+        return focus * exposure * size;
+    }
+
+    private float percentileSpread(float low, float high) {
+        int total = (int) gray.total();
+        if(pixels.length < total) {
+            pixels = new byte[total];
+        }
+        gray.get(0, 0, pixels);
+
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = 0;
+        }
+        for (int i = 0; i < total; i++) {
+            ++histogram[pixels[i] & 0xFF];
+        }
+
+        int lowCount = (int) (low * total);
+        int highCount = (int) (high * total);
+        int lowLevel = -1;
+        int highLevel = 255;
+        int cumulative = 0;
+        for (int level = 0; level < histogram.length; level++) {
+            cumulative += histogram[level];
+            if(lowLevel < 0 && cumulative > lowCount) {
+                lowLevel = level;
+            }
+            if(cumulative > highCount) {
+                highLevel = level;
+                break;
+            }
+        }
+
+        return Math.max(0, highLevel - Math.max(lowLevel, 0));
+    }
+
+    /**
+     * Focus term of the last score.
+     */
+    public float getFocus() {
+        return focus;
+    }
+
+    /**
+     * Exposure term of the last score.
+     */
+    public float getExposure() {
+        return exposure;
+    }
+
+    /**
+     * Size term of the last score.
+     */
+    public float getSize() {
+        return size;
+    }
+
+    public void release() {
+        resized.release();
+        gray.release();
+        laplacian.release();
+        mean.release();
+        stdDev.release();
+    }
+}
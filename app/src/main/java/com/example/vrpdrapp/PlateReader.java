@@ -0,0 +1,121 @@
+package com.example.vrpdrapp;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Segmentation and OCR workspace for reading one plate at a time.
+ */
+public class PlateReader {
+
+    // candidates per character handed to the grammar decoder
+    public static final int TOP_K = 5;
+
+    private CharactersExtraction charactersExtraction;
+
+    private CharacterClassifier classifier;
+
+    private CharacterBatch characterBatch = new CharacterBatch(16);
+
+    private OcrResult ocrResult = new OcrResult(16, TOP_K);
+
+    private PlateGrammarDecoder grammar;
+
+    private float[] confidences = new float[4];
+
+    public PlateReader(CharactersExtraction charactersExtraction, CharacterClassifier classifier) {
+        this.charactersExtraction = charactersExtraction;
+        this.classifier = classifier;
+    }
+
+    /**
+     * Constrains the readings to the plate formats of the decoder, readings that match none of them are
+     * returned as classified.
+     *
+     * @param grammar plate formats decoder, null disables the constraint
+     */
+    public void setGrammar(PlateGrammarDecoder grammar) {
+        this.grammar = grammar;
+    }
+
+    public String read(Mat plateImage) {
+        characterBatch.clear();
+        charactersExtraction.extract(plateImage, characterBatch);
+
+        classifier.predict(characterBatch, ocrResult);
+
+        ensureConfidences(1);
+        return toText(0, 0, ocrResult.size());
+    }
+
+    /**
+     * Reads every plate of a frame with a single OCR forward pass for all their characters.
+     *
+     * @return plate readings in the same order as boundingBoxes
+     */
+    public List<String> read(Mat frame, List<Rect> boundingBoxes) {
+        characterBatch.clear();
+
+        int[] counts = new int[boundingBoxes.size()];
+        for (int i = 0; i < boundingBoxes.size(); i++) {
+            Mat roi = new Mat(frame, boundingBoxes.get(i));
+            counts[i] = charactersExtraction.extract(roi, characterBatch);
+            roi.release();
+        }
+
+        classifier.predict(characterBatch, ocrResult);
+
+        ensureConfidences(counts.length);
+        List<String> readings = new ArrayList<>(counts.length);
+        int offset = 0;
+        for (int i = 0; i < counts.length; i++) {
+            readings.add(toText(i, offset, counts[i]));
+            offset += counts[i];
+        }
+
+        return readings;
+    }
+
+    private String toText(int plate, int start, int length) {
+        if(grammar != null && grammar.decode(ocrResult, start, length)) {
+            confidences[plate] = (float) Math.pow(grammar.getProbability(), 1.0 / grammar.getLength());
+            return grammar.getText();
+        }
+
+        confidences[plate] = ocrResult.getConfidence(start, length);
+        return ocrResult.getText(start, length);
+    }
+
+    private void ensureConfidences(int plates) {
+        if(confidences.length < plates) {
+            confidences = new float[plates];
+        }
+    }
+
+    /**
+     * Confidence of a plate of the last read (geometric mean of its character probabilities).
+     *
+     * @param plate index of the plate in the last read, 0 after a single plate read
+     */
+    public float getConfidence(int plate) {
+        return confidences[plate];
+    }
+
+    /**
+     * Scores of the last read, for multi-plate reads characters of all plates are in detection order.
+     */
+    public OcrResult getOcrResult() {
+        return ocrResult;
+    }
+
+    public CharactersExtraction getCharactersExtraction() {
+        return charactersExtraction;
+    }
+
+    public CharacterClassifier getClassifier() {
+        return classifier;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.vrpdrapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.pytorch.IValue;
+import org.pytorch.Module;
+import org.pytorch.Tensor;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+
+/**
+ * Segmentation free recognizer: a CRNN style sequence model reads the whole plate and its per time step class
+ * scores are CTC decoded. The model takes a 1 x 1 x height x width gray plate scaled to [0, 1] and outputs
+ * time steps x classes scores, class 0 being the CTC blank and class i the label i - 1 of the alphabet.
+ */
+public class PlateSequenceRecognizer {
+
+    private static final String TAG = PlateSequenceRecognizer.class.getSimpleName();
+
+    private static final int MAX_TIME_STEPS = 64;
+
+    private Module module = null;
+
+    private String[] alphabet;
+
+    private int inputWidth;
+    private int inputHeight;
+
+    private boolean beamSearch = false;
+
+    private FloatBuffer inputBuffer;
+    private Tensor inputTensor;
+
+    private Mat grayImage = new Mat();
+    private Mat resizedImage;
+    private Size inputSize;
+    private byte[] pixels;
+
+    private CtcDecoder decoder;
+    private int[] labels = new int[MAX_TIME_STEPS];
+    private StringBuilder text = new StringBuilder(MAX_TIME_STEPS);
+
+    public PlateSequenceRecognizer(Context context, String moduleName, int inputWidth, int inputHeight, String[] alphabet) {
+        Log.i(TAG, "Loading plate sequence recognizer... ");
+
+        try {
+            this.module = Module.load(EMNISTNet.getAssetFilePath(context, moduleName));
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading asset: Failed to load pytorch module from "+moduleName);
+        }
+
+        this.alphabet = alphabet;
+        this.inputWidth = inputWidth;
+        this.inputHeight = inputHeight;
+
+        inputBuffer = Tensor.allocateFloatBuffer(inputWidth * inputHeight);
+        inputTensor = Tensor.fromBlob(inputBuffer, new long[] {1, 1, inputHeight, inputWidth});
+
+        resizedImage = new Mat(inputHeight, inputWidth, CvType.CV_8UC1);
+        inputSize = new Size(inputWidth, inputHeight);
+        pixels = new byte[inputWidth * inputHeight];
+
+        decoder = new CtcDecoder(MAX_TIME_STEPS, alphabet.length + 1, 0, 8);
+    }
+
+    public boolean isLoaded() {
+        return module != null;
+    }
+
+    /**
+     * @param beamSearch prefix beam search instead of greedy decoding
+     */
+    public void setBeamSearch(boolean beamSearch) {
+        this.beamSearch = beamSearch;
+    }
+
+    /**
+     * Reads a whole plate.
+     *
+     * @param plateImage RGB plate ROI
+     */
+    public String recognize(Mat plateImage) {
+        Imgproc.cvtColor(plateImage, grayImage, Imgproc.COLOR_RGB2GRAY);
+        Imgproc.resize(grayImage, resizedImage, inputSize);
+        resizedImage.get(0, 0, pixels);
+
+        inputBuffer.clear();
+        for (int i = 0; i < pixels.length; i++) {
+            inputBuffer.put((pixels[i] & 0xFF) / 255.0f);
+        }
+
+        final Tensor outputTensor = module.forward(IValue.from(inputTensor)).toTensor();
+
+        final float[] scores = outputTensor.getDataAsFloatArray();
+
+        int timeSteps = scores.length / (alphabet.length + 1);
+        int length = beamSearch
+                ? decoder.decodeBeam(scores, 0, timeSteps, labels)
+                : decoder.decodeGreedy(scores, 0, timeSteps, labels);
+
+        text.setLength(0);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet[labels[i] - 1]);
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Confidence of the last recognized plate, see CtcDecoder.getLastConfidence().
+     */
+    public float getLastConfidence() {
+        return decoder.getLastConfidence();
+    }
+
+    public void warmUp(int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            inputBuffer.clear();
+            for (int j = 0; j < pixels.length; j++) {
+                inputBuffer.put(0.0f);
+            }
+            module.forward(IValue.from(inputTensor));
+        }
+    }
+}
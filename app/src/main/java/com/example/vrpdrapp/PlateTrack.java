@@ -0,0 +1,202 @@
+package com.example.vrpdrapp;
+
+import org.opencv.core.Rect;
+
+/**
+ * One plate followed across frames. The box centre and size are filtered by a constant velocity Kalman
+ * filter, each of them is an independent (position, velocity) pair so the filter stays in primitive arrays.
+ */
+public class PlateTrack {
+
+    // box centre x, centre y, width and height
+    private static final int CX = 0;
+    private static final int CY = 1;
+    private static final int W = 2;
+    private static final int H = 3;
+
+    // noise standard deviations, relative to the box height
+    private static final float PROCESS_NOISE = 0.05f;
+    private static final float MEASUREMENT_NOISE = 0.1f;
+
+    private int id;
+
+    private float[] position = new float[4];
+    private float[] velocity = new float[4];
+    // covariance of each (position, velocity) pair
+    private float[] p00 = new float[4];
+    private float[] p01 = new float[4];
+    private float[] p11 = new float[4];
+
+    private Rect box = new Rect();
+
+    private int hits = 1;
+    private int misses = 0;
+    private int age = 0;
+
+    private PlateConsensus consensus;
+
+    private FrameSelector frameSelector;
+
+    private boolean reported = false;
+
+    PlateTrack(int id, Rect detection, PlateConsensus consensus, FrameSelector frameSelector) {
+        this.id = id;
+        this.consensus = consensus;
+        this.frameSelector = frameSelector;
+
+        position[CX] = detection.x + detection.width * 0.5f;
+        position[CY] = detection.y + detection.height * 0.5f;
+        position[W] = detection.width;
+        position[H] = detection.height;
+
+        float r = MEASUREMENT_NOISE * detection.height;
+        for (int i = 0; i < 4; i++) {
+            // the velocity is unknown until the second measurement
+            p00[i] = r * r;
+            p01[i] = 0.0f;
+            p11[i] = 10.0f * r * r;
+        }
+
+        updateBox();
+    }
+
+    /**
+     * Moves the track one frame ahead.
+     */
+    void predict() {
+        float q = PROCESS_NOISE * Math.max(position[H], 1.0f);
+        q *= q;
+
+        for (int i = 0; i < 4; i++) {
+            position[i] += velocity[i];
+
+            // P = F P F' + Q with F = [1 1; 0 1] and Q the white acceleration noise of one frame
+            float a = p00[i] + 2.0f * p01[i] + p11[i];
+            float b = p01[i] + p11[i];
+            p00[i] = a + 0.25f * q;
+            p01[i] = b + 0.5f * q;
+            p11[i] = p11[i] + q;
+        }
+
+        position[W] = Math.max(position[W], 1.0f);
+        position[H] = Math.max(position[H], 1.0f);
+
+        ++age;
+        updateBox();
+    }
+
+    /**
+     * Corrects the predicted state with the detection matched in this frame.
+     */
+    void correct(Rect detection) {
+        float r = MEASUREMENT_NOISE * detection.height;
+        r *= r;
+
+        correct(CX, detection.x + detection.width * 0.5f, r);
+        correct(CY, detection.y + detection.height * 0.5f, r);
+        correct(W, detection.width, r);
+        correct(H, detection.height, r);
+
+        ++hits;
+        misses = 0;
+        updateBox();
+    }
+
+    private void correct(int i, float measurement, float r) {
+        float s = p00[i] + r;
+        float k0 = p00[i] / s;
+        float k1 = p01[i] / s;
+        float innovation = measurement - position[i];
+
+        position[i] += k0 * innovation;
+        velocity[i] += k1 * innovation;
+
+        p11[i] -= k1 * p01[i];
+        p00[i] *= 1.0f - k0;
+        p01[i] *= 1.0f - k0;
+    }
+
+    void miss() {
+        ++misses;
+    }
+
+    private void updateBox() {
+        box.x = Math.round(position[CX] - position[W] * 0.5f);
+        box.y = Math.round(position[CY] - position[H] * 0.5f);
+        box.width = Math.round(position[W]);
+        box.height = Math.round(position[H]);
+    }
+
+    /**
+     * Votes a reading into the track's consensus.
+     */
+    public void addReading(String text, float confidence) {
+        consensus.add(text, confidence);
+    }
+
+    /**
+     * True until the consensus of the track's readings is settled.
+     */
+    public boolean needsOcr() {
+        return !consensus.isSettled();
+    }
+
+    /**
+     * Records the plate quality in the current frame.
+     *
+     * @return true when the frame is among the best recent ones and should be read, always true when the
+     * tracker has no frame selection
+     */
+    public boolean selectFrame(float quality) {
+        return frameSelector == null || frameSelector.offer(quality);
+    }
+
+    /**
+     * Marks the settled reading of the track as reported, so it is reported once.
+     */
+    public void setReported() {
+        reported = true;
+    }
+
+    public boolean isReported() {
+        return reported;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Filtered box of the current frame, the prediction when the plate was not detected.
+     */
+    public Rect getBox() {
+        return box;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    /**
+     * Consensus reading, null until the plate was read.
+     */
+    public String getText() {
+        return consensus.getText();
+    }
+
+    public boolean isSettled() {
+        return consensus.isSettled();
+    }
+
+    public PlateConsensus getConsensus() {
+        return consensus;
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.vrpdrapp;
+
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Associates the plate detections of consecutive frames into tracks with stable ids, so a plate is read
+ * only until the consensus of its readings is settled instead of on every frame it is visible.
+ *
+ * Tracks are predicted one frame ahead by their Kalman filter and matched to the detections with the
+ * Hungarian algorithm on 1 - IoU, pairs overlapping less than minIoU are not matched.
+ */
+public class PlateTracker {
+
+    private float minIoU;
+    private int maxMisses;
+    private int maxReads;
+    private float settleMargin;
+
+    private int selectionWindow = 0;
+    private int readsPerWindow;
+    private float minQuality;
+
+    private int nextId = 0;
+    private List<PlateTrack> tracks = new ArrayList<>();
+
+    // Hungarian algorithm workspace, square (n + 1) x (n + 1) with 1-based indexes
+    private int capacity = 0;
+    private float[] cost;
+    private float[] u;
+    private float[] v;
+    private float[] minv;
+    private int[] p;
+    private int[] way;
+    private boolean[] used;
+
+    private List<PlateTrack> matched = new ArrayList<>();
+
+    /**
+     * @param minIoU minimum overlap between a predicted track box and a detection to match them
+     * @param maxMisses frames a track is kept without being detected
+     * @param maxReads readings voted per track, see PlateConsensus
+     * @param settleMargin vote lead at which a track is settled and no longer read
+     */
+    public PlateTracker(float minIoU, int maxMisses, int maxReads, float settleMargin) {
+        this.minIoU = minIoU;
+        this.maxMisses = maxMisses;
+        this.maxReads = maxReads;
+        this.settleMargin = settleMargin;
+    }
+
+    /**
+     * Reads each track only on the best frames of a sliding window, see FrameSelector. Applies to the tracks
+     * started from now on.
+     *
+     * @param window frames of the window, 0 reads every frame
+     */
+    public synchronized void setFrameSelection(int window, int readsPerWindow, float minQuality) {
+        this.selectionWindow = window;
+        this.readsPerWindow = readsPerWindow;
+        this.minQuality = minQuality;
+    }
+
+    /**
+     * Advances the tracks to a new frame.
+     *
+     * @param detections plate boxes of the frame
+     * @return track of each detection, in the same order as detections; the list is reused by the next call
+     */
+    public synchronized List<PlateTrack> update(List<Rect> detections) {
+        for (PlateTrack track : tracks) {
+            track.predict();
+        }
+
+        int n = Math.max(tracks.size(), detections.size());
+        ensureCapacity(n);
+
+        // padding rows and columns cost as much as a pair without overlap
+        int stride = n + 1;
+        for (int t = 1; t <= n; t++) {
+            for (int d = 1; d <= n; d++) {
+                float iou = t <= tracks.size() && d <= detections.size()
+                        ? iou(tracks.get(t - 1).getBox(), detections.get(d - 1)) : 0.0f;
+                cost[t * stride + d] = 1.0f - iou;
+            }
+        }
+
+        assign(n);
+
+        matched.clear();
+        for (int d = 0; d < detections.size(); d++) {
+            matched.add(null);
+        }
+
+        for (int d = 1; d <= detections.size(); d++) {
+            int t = p[d];
+            if(t == 0 || t > tracks.size() || 1.0f - cost[t * stride + d] < minIoU)
+                continue;
+
+            PlateTrack track = tracks.get(t - 1);
+            track.correct(detections.get(d - 1));
+            matched.set(d - 1, track);
+        }
+
+        for (int i = tracks.size() - 1; i >= 0; i--) {
+            PlateTrack track = tracks.get(i);
+            if(!matched.contains(track)) {
+                track.miss();
+                if(track.getMisses() > maxMisses) {
+                    tracks.remove(i);
+                }
+            }
+        }
+
+        for (int d = 0; d < detections.size(); d++) {
+            if(matched.get(d) == null) {
+                FrameSelector frameSelector = selectionWindow > 0
+                        ? new FrameSelector(selectionWindow, readsPerWindow, minQuality) : null;
+                PlateTrack track = new PlateTrack(nextId++, detections.get(d),
+                        new PlateConsensus(maxReads, settleMargin), frameSelector);
+                tracks.add(track);
+                matched.set(d, track);
+            }
+        }
+
+        return matched;
+    }
+
+    /**
+     * Minimum cost assignment of the n x n cost matrix (Hungarian algorithm with potentials), p[column]
+     * holds the row assigned to each column.
+     */
+    private void assign(int n) {
+        int stride = n + 1;
+        for (int j = 0; j <= n; j++) {
+            u[j] = 0.0f;
+            v[j] = 0.0f;
+            p[j] = 0;
+            way[j] = 0;
+        }
+
+        for (int i = 1; i <= n; i++) {
+            p[0] = i;
+            int j0 = 0;
+            for (int j = 0; j <= n; j++) {
+                minv[j] = Float.POSITIVE_INFINITY;
+                used[j] = false;
+            }
+
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                float delta = Float.POSITIVE_INFINITY;
+                int j1 = 0;
+                for (int j = 1; j <= n; j++) {
+                    if(used[j])
+                        continue;
+
+                    float current = cost[i0 * stride + j] - u[i0] - v[j];
+                    if(current < minv[j]) {
+                        minv[j] = current;
+                        way[j] = j0;
+                    }
+                    if(minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+
+                for (int j = 0; j <= n; j++) {
+                    if(used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+    }
+
+    private void ensureCapacity(int n) {
+        if(n <= capacity)
+            return;
+
+        capacity = Math.max(n, 2 * capacity);
+        int size = capacity + 1;
+        cost = new float[size * size];
+        u = new float[size];
+        v = new float[size];
+        minv = new float[size];
+        p = new int[size];
+        way = new int[size];
+        used = new boolean[size];
+    }
+
+    static float iou(Rect a, Rect b) {
+        int x0 = Math.max(a.x, b.x);
+        int y0 = Math.max(a.y, b.y);
+        int x1 = Math.min(a.x + a.width, b.x + b.width);
+        int y1 = Math.min(a.y + a.height, b.y + b.height);
+        if(x1 <= x0 || y1 <= y0)
+            return 0.0f;
+
+        float intersection = (float) (x1 - x0) * (y1 - y0);
+        return intersection / ((float) a.width * a.height + (float) b.width * b.height - intersection);
+    }
+
+    /**
+     * Tracks alive, including the ones missed in the last frames.
+     */
+    public synchronized List<PlateTrack> getTracks() {
+        return new ArrayList<>(tracks);
+    }
+
+    public synchronized void clear() {
+        tracks.clear();
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.vrpdrapp;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.List;
+
+/**
+ * Low latency segmenter for clean, well aligned plates. Characters are cut at the valleys of the column ink
+ * histogram computed over the text band found by the row ink histogram.
+ */
+public class ProjectionProfileSegmenter implements CharacterSegmenter {
+
+    private static final String TAG = ProjectionProfileSegmenter.class.getSimpleName();
+
+    private float minContourAreaRatio;
+    private float maxContourAreaRatio;
+
+    private int minCharacters = 4;
+    private int maxCharacters = 10;
+
+    // a row belongs to the text band when its ink is at least this fraction of the densest row
+    private float rowInkRatio = 0.2f;
+    // a column is a valley when its ink is at most this fraction of the text band height
+    private float valleyInkRatio = 0.05f;
+
+    private byte[] pixels = new byte[0];
+    private int[] rowInk = new int[0];
+    private int[] columnInk = new int[0];
+
+    public ProjectionProfileSegmenter(float minContourAreaRatio, float maxContourAreaRatio) {
+        this.minContourAreaRatio = minContourAreaRatio;
+        this.maxContourAreaRatio = maxContourAreaRatio;
+    }
+
+    public void setCharactersRange(int minCharacters, int maxCharacters) {
+        this.minCharacters = minCharacters;
+        this.maxCharacters = maxCharacters;
+    }
+
+    public void setInkRatios(float rowInkRatio, float valleyInkRatio) {
+        this.rowInkRatio = rowInkRatio;
+        this.valleyInkRatio = valleyInkRatio;
+    }
+
+    @Override
+    public float segment(Mat image, Mat thresholdImg, List<Rect> outputBoxes) {
+        int rows = thresholdImg.rows();
+        int cols = thresholdImg.cols();
+        if(rows == 0 || cols == 0)
+            return 0.0f;
+
+        ensureCapacity(rows, cols);
+        thresholdImg.get(0, 0, pixels);
+
+        // row profile
+        int maxRowInk = 0;
+        for (int i = 0; i < rows; i++) {
+            int ink = 0;
+            int offset = i * cols;
+            for (int j = 0; j < cols; j++) {
+                if(pixels[offset + j] != 0) {
+                    ++ink;
+                }
+            }
+            rowInk[i] = ink;
+            maxRowInk = Math.max(maxRowInk, ink);
+        }
+
+        if(maxRowInk == 0)
+            return 0.0f;
+
+        // text band: longest run of rows with enough ink
+        int bandTop = 0, bandBottom = -1;
+        int rowThreshold = Math.max(1, (int) (rowInkRatio * maxRowInk));
+        for (int i = 0, start = -1; i <= rows; i++) {
+            boolean inked = i < rows && rowInk[i] >= rowThreshold;
+            if(inked && start < 0) {
+                start = i;
+            } else if(!inked && start >= 0) {
+                if(i - start > bandBottom - bandTop + 1) {
+                    bandTop = start;
+                    bandBottom = i - 1;
+                }
+                start = -1;
+            }
+        }
+        int bandHeight = bandBottom - bandTop + 1;
+
+        // column profile restricted to the text band
+        for (int j = 0; j < cols; j++) {
+            columnInk[j] = 0;
+        }
+        for (int i = bandTop; i <= bandBottom; i++) {
+            int offset = i * cols;
+            for (int j = 0; j < cols; j++) {
+                if(pixels[offset + j] != 0) {
+                    ++columnInk[j];
+                }
+            }
+        }
+
+        // cut at valleys
+        float totalArea = rows * cols;
+        int valleyThreshold = (int) (valleyInkRatio * bandHeight);
+        int segments = 0;
+        int accepted = 0;
+        float widthSum = 0.0f;
+        float widthSquaredSum = 0.0f;
+        int firstBox = outputBoxes.size();
+        for (int j = 0, start = -1; j <= cols; j++) {
+            boolean inked = j < cols && columnInk[j] > valleyThreshold;
+            if(inked && start < 0) {
+                start = j;
+            } else if(!inked && start >= 0) {
+                ++segments;
+                Rect box = tightenVertically(start, j - start, bandTop, bandBottom, cols);
+                float areaRatio = (float) box.area() / totalArea;
+                if(areaRatio >= minContourAreaRatio && areaRatio <= maxContourAreaRatio) {
+                    outputBoxes.add(box);
+                    ++accepted;
+                    widthSum += box.width;
+                    widthSquaredSum += box.width * box.width;
+                }
+                start = -1;
+            }
+        }
+
+        if(accepted < minCharacters || accepted > maxCharacters) {
+            while(outputBoxes.size() > firstBox) {
+                outputBoxes.remove(outputBoxes.size() - 1);
+            }
+            return 0.0f;
+        }
+
+        // characters of a plate have similar widths, wide spread means merged or broken characters
+        float meanWidth = widthSum / accepted;
+        float variance = Math.max(0.0f, widthSquaredSum / accepted - meanWidth * meanWidth);
+        float uniformity = Math.max(0.0f, 1.0f - (float) Math.sqrt(variance) / meanWidth);
+
+        return uniformity * accepted / segments;
+    }
+
+    private Rect tightenVertically(int x, int width, int bandTop, int bandBottom, int cols) {
+        int top = bandBottom, bottom = bandTop;
+        for (int i = bandTop; i <= bandBottom; i++) {
+            int offset = i * cols + x;
+            for (int j = 0; j < width; j++) {
+                if(pixels[offset + j] != 0) {
+                    top = Math.min(top, i);
+                    bottom = Math.max(bottom, i);
+                    break;
+                }
+            }
+        }
+
+        if(bottom < top) {
+            top = bandTop;
+            bottom = bandBottom;
+        }
+
+        return new Rect(x, top, width, bottom - top + 1);
+    }
+
+    private void ensureCapacity(int rows, int cols) {
+        if(pixels.length < rows * cols) {
+            pixels = new byte[rows * cols];
+        }
+        if(rowInk.length < rows) {
+            rowInk = new int[rows];
+        }
+        if(columnInk.length < cols) {
+            columnInk = new int[cols];
+        }
+    }
+}
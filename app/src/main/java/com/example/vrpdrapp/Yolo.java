@@ -1,10 +1,10 @@
 package com.example.vrpdrapp;
 
 import android.content.Context;
-import android.content.res.AssetManager;
 import android.util.Log;
 
 import org.opencv.core.Core;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfFloat;
 import org.opencv.core.MatOfInt;
@@ -18,10 +18,8 @@ import org.opencv.dnn.Net;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.utils.Converters;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -31,6 +29,12 @@ public class Yolo {
 
     private static final String TAG = Yolo.class.getSimpleName();
 
+    // the input sides must be multiples of the network stride
+    private static final int STRIDE = 32;
+    // region input sides are quantized to quarters of the input, a shape change makes OpenCV reallocate the
+    // network so the regions share a few shapes
+    private static final int REGION_LEVELS = 4;
+
     private Context context;
 
     private Net net;
@@ -58,25 +62,10 @@ public class Yolo {
         this.nonMaxSupressThreshold = nonMaxSupressThreshold;
     }
 
-    // Upload file to storage and return a path.
+    // Copy file to the model cache (once per app version) and return a path.
     private String getAssetPath(String file) {
-        AssetManager assetManager = context.getAssets();
-
-        BufferedInputStream inputStream = null;
         try {
-            // Read data from assets.
-            inputStream = new BufferedInputStream(assetManager.open(file));
-            byte[] data = new byte[inputStream.available()];
-            inputStream.read(data);
-            inputStream.close();
-
-            // Create copy file in storage.
-            File outFile = new File(context.getFilesDir(), file);
-            FileOutputStream os = new FileOutputStream(outFile);
-            os.write(data);
-            os.close();
-            // Return a path to file which may be read in common way.
-            return outFile.getAbsolutePath();
+            return ModelCache.getInstance(context).getPath(file);
         } catch (IOException ex) {
             Log.i(TAG, "Failed to upload a file");
             return "";
@@ -183,7 +172,7 @@ public class Yolo {
         return boundingBoxes;
     }
 
-    public void drawBoundingBox(Mat inputImage, float confidence, String label, float fontScale, Rect boundingBox, int thickness) {
+    public static void drawBoundingBox(Mat inputImage, float confidence, String label, float fontScale, Rect boundingBox, int thickness) {
         if(confidence > 0.8) {
             Scalar color = new Scalar(0, 255, 0);
             Imgproc.rectangle(inputImage, boundingBox.tl(), boundingBox.br(), color, thickness);
@@ -201,8 +190,89 @@ public class Yolo {
         }
     }
 
+    /**
+     * Runs forward passes on a synthetic frame at the full input size, so the first whole frame detection
+     * doesn't pay for the lazy allocations of the network. The first detectAtFrameScale() of each region
+     * shape still reallocates it.
+     */
+    public void warmUp(int iterations) {
+        Mat frame = new Mat(inputImageSize, CvType.CV_8UC3, new Scalar(127, 127, 127));
+        List<String> outBlobNames = getOutputNames(net);
+
+        for (int i = 0; i < iterations; i++) {
+            Mat blob = Dnn.blobFromImage(frame, 0.00392, inputImageSize, new Scalar(0, 0, 0), false, false);
+            net.setInput(blob);
+
+            List<Mat> result = new ArrayList<>();
+            net.forward(result, outBlobNames);
+
+            for (Mat output : result) {
+                output.release();
+            }
+            blob.release();
+        }
+
+        frame.release();
+    }
+
+    /**
+     * Detects plates inside a region of the image only, the boxes are returned in image coordinates.
+     */
+    public List<Rect> detect(Mat inputImage, Rect region, boolean drawBoundingBox) {
+        Mat roi = new Mat(inputImage, region);
+        List<Rect> boundingBoxes = detect(roi, drawBoundingBox);
+        roi.release();
+
+        for (Rect box : boundingBoxes) {
+            box.x += region.x;
+            box.y += region.y;
+        }
+
+        return boundingBoxes;
+    }
+
+    /**
+     * Same as detect(inputImage, region, drawBoundingBox) on an input scaled to the region: the region keeps the
+     * pixels per input of a whole frame detection, so a small region runs a small forward pass instead of being
+     * upsampled to the full input size. The input sides are rounded up to quarters of the full input.
+     */
+    public List<Rect> detectAtFrameScale(Mat inputImage, Rect region, boolean drawBoundingBox) {
+        Size size = getRegionInputSize(inputImageSize, inputImage.cols(), inputImage.rows(), region);
+
+        Mat roi = new Mat(inputImage, region);
+        List<Rect> boundingBoxes = detect(roi, size, drawBoundingBox);
+        roi.release();
+
+        for (Rect box : boundingBoxes) {
+            box.x += region.x;
+            box.y += region.y;
+        }
+
+        return boundingBoxes;
+    }
+
+    /**
+     * Input size of a region of a width x height frame at the scale of the whole frame input, its sides rounded
+     * up to a quarter, half, three quarters or all of the input side, then to a multiple of the stride.
+     */
+    static Size getRegionInputSize(Size inputSize, int width, int height, Rect region) {
+        return new Size(quantize(region.width * inputSize.width / width, inputSize.width),
+                quantize(region.height * inputSize.height / height, inputSize.height));
+    }
+
+    private static int quantize(double side, double maxSide) {
+        double levelSide = maxSide / REGION_LEVELS;
+        int level = Math.min(REGION_LEVELS, Math.max(1, (int) Math.ceil(side / levelSide)));
+        int strides = (int) Math.ceil(level * levelSide / STRIDE);
+        return (int) Math.min(strides * STRIDE, maxSide);
+    }
+
     public List<Rect> detect(Mat inputImage, boolean drawBoundingBox) {
-        Mat blob = Dnn.blobFromImage(inputImage, 0.00392, inputImageSize, new Scalar(0, 0, 0), false, false);
+        return detect(inputImage, inputImageSize, drawBoundingBox);
+    }
+
+    private List<Rect> detect(Mat inputImage, Size inputSize, boolean drawBoundingBox) {
+        Mat blob = Dnn.blobFromImage(inputImage, 0.00392, inputSize, new Scalar(0, 0, 0), false, false);
 
         net.setInput(blob);
 
@@ -0,0 +1,84 @@
+package com.example.vrpdrapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CharacterCacheTest {
+
+    private static float[] glyph(long seed) {
+        float[] data = new float[CharacterBatch.CHARACTER_PIXELS];
+        for (int i = 0; i < data.length; i++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            data[i] = (seed >>> 63) == 0 ? 0.0f : 1.0f;
+        }
+        return data;
+    }
+
+    private static OcrResult scores(int... classes) {
+        OcrResult result = new OcrResult(1, PlateReader.TOP_K);
+        result.reset(1);
+        float[] distribution = new float[EMNISTNet.CLASS_LABELS.length];
+        for (int rank = 0; rank < classes.length; rank++) {
+            distribution[classes[rank]] = 0.5f / (rank + 1);
+        }
+        result.set(0, distribution, distribution.length);
+        return result;
+    }
+
+    @Test
+    public void hit_keepsEveryCandidate() {
+        CharacterCache cache = new CharacterCache(8, PlateReader.TOP_K);
+        long hash = cache.hash(glyph(1), 0);
+        cache.put(hash, scores(3, 1, 4, 7, 5), 0);
+
+        OcrResult result = new OcrResult(1, PlateReader.TOP_K);
+        result.reset(1);
+        assertTrue(cache.lookup(hash, result, 0));
+        for (int rank = 0; rank < PlateReader.TOP_K; rank++) {
+            assertEquals(new int[] { 3, 1, 4, 7, 5 }[rank], result.getClass(0, rank));
+        }
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void onePixelDifference_misses() {
+        CharacterCache cache = new CharacterCache(8, PlateReader.TOP_K);
+        float[] data = glyph(2);
+        cache.put(cache.hash(data, 0), scores(10), 0);
+
+        data[14 * CharacterBatch.CHARACTER_SIZE + 14] = 1.0f - data[14 * CharacterBatch.CHARACTER_SIZE + 14];
+        assertFalse(cache.lookup(cache.hash(data, 0), new OcrResult(1, PlateReader.TOP_K), 0));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void hash_readsAtOffset() {
+        CharacterCache cache = new CharacterCache(8, PlateReader.TOP_K);
+        float[] data = glyph(3);
+        float[] packed = new float[2 * CharacterBatch.CHARACTER_PIXELS];
+        System.arraycopy(data, 0, packed, CharacterBatch.CHARACTER_PIXELS, data.length);
+
+        assertEquals(cache.hash(data, 0), cache.hash(packed, CharacterBatch.CHARACTER_PIXELS));
+    }
+
+    @Test
+    public void full_evictsLeastRecentlyUsed() {
+        CharacterCache cache = new CharacterCache(2, PlateReader.TOP_K);
+        long first = cache.hash(glyph(4), 0);
+        long second = cache.hash(glyph(5), 0);
+        long third = cache.hash(glyph(6), 0);
+        OcrResult result = new OcrResult(1, PlateReader.TOP_K);
+        result.reset(1);
+
+        cache.put(first, scores(1), 0);
+        cache.put(second, scores(2), 0);
+        assertTrue(cache.lookup(first, result, 0));
+        cache.put(third, scores(3), 0);
+
+        assertTrue(cache.lookup(first, result, 0));
+        assertFalse(cache.lookup(second, result, 0));
+        assertTrue(cache.lookup(third, result, 0));
+        assertEquals(3, result.getClass(0, 0));
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.vrpdrapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CtcDecoderTest {
+
+    private static final int BLANK = 0;
+    private static final int A = 1;
+    private static final int B = 2;
+
+    // time steps x 3 classes given as probabilities, returned as log probabilities
+    private static float[] scores(float[]... steps) {
+        float[] scores = new float[steps.length * 3];
+        for (int t = 0; t < steps.length; t++) {
+            for (int c = 0; c < 3; c++) {
+                scores[t * 3 + c] = (float) Math.log(Math.max(steps[t][c], 1e-9f));
+            }
+        }
+        return scores;
+    }
+
+    private static float[] step(int label) {
+        float[] p = new float[] { 0.01f, 0.01f, 0.01f };
+        p[label] = 0.98f;
+        return p;
+    }
+
+    @Test
+    public void greedy_collapsesRepeatsAndRemovesBlanks() {
+        CtcDecoder decoder = new CtcDecoder(8, 3, BLANK, 1);
+        float[] scores = scores(step(A), step(A), step(BLANK), step(A), step(B), step(B));
+
+        int[] labels = new int[8];
+        int length = decoder.decodeGreedy(scores, 0, 6, labels);
+
+        assertArrayEquals(new int[] { A, A, B }, Arrays.copyOf(labels, length));
+        assertTrue(decoder.getLastConfidence() > 0.9f);
+    }
+
+    @Test
+    public void greedy_readsAtOffset() {
+        CtcDecoder decoder = new CtcDecoder(8, 3, BLANK, 1);
+        float[] plate = scores(step(B), step(BLANK), step(A));
+        float[] scores = new float[3 + plate.length];
+        System.arraycopy(plate, 0, scores, 3, plate.length);
+
+        int[] labels = new int[8];
+        int length = decoder.decodeGreedy(scores, 3, 3, labels);
+
+        assertArrayEquals(new int[] { B, A }, Arrays.copyOf(labels, length));
+    }
+
+    @Test
+    public void beam_sumsPathsOfTheSameLabels() {
+        // best path is blank, blank (0.36) but the paths of "A" add up to 0.64
+        float[] uncertain = new float[] { 0.6f, 0.4f, 0.0f };
+        float[] scores = scores(uncertain, uncertain);
+        int[] labels = new int[8];
+
+        CtcDecoder greedy = new CtcDecoder(8, 3, BLANK, 1);
+        assertEquals(0, greedy.decodeGreedy(scores, 0, 2, labels));
+
+        CtcDecoder beam = new CtcDecoder(8, 3, BLANK, 4);
+        int length = beam.decodeBeam(scores, 0, 2, labels);
+        assertArrayEquals(new int[] { A }, Arrays.copyOf(labels, length));
+        assertEquals(0.64f, beam.getLastConfidence(), 1e-3f);
+    }
+
+    @Test
+    public void beam_keepsRepeatsSeparatedByBlank() {
+        CtcDecoder decoder = new CtcDecoder(8, 3, BLANK, 4);
+        float[] scores = scores(step(A), step(A), step(BLANK), step(A), step(B));
+
+        int[] labels = new int[8];
+        int length = decoder.decodeBeam(scores, 0, 5, labels);
+
+        assertArrayEquals(new int[] { A, A, B }, Arrays.copyOf(labels, length));
+    }
+
+    @Test
+    public void beam_stopsAtTheOutputSize() {
+        CtcDecoder decoder = new CtcDecoder(8, 3, BLANK, 4);
+        float[] scores = scores(step(A), step(B), step(A), step(B));
+
+        int[] labels = new int[2];
+        int length = decoder.decodeBeam(scores, 0, 4, labels);
+
+        assertArrayEquals(new int[] { A, B }, Arrays.copyOf(labels, length));
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.vrpdrapp;
+
+import org.junit.Test;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LaneMaskTest {
+
+    @Test
+    public void parse_readsPolygons() {
+        LaneMask mask = LaneMask.parse("0.1,0.5 0.5,0.5 0.5,1;0.6,0.5  0.9,0.5 0.9,1 0.6,1");
+
+        assertFalse(mask.isEmpty());
+        assertEquals(new Rect(100, 250, 800, 250), mask.getBoundingRegion(1000, 500));
+    }
+
+    @Test
+    public void parse_emptyValueClearsTheMask() {
+        assertTrue(LaneMask.parse("").isEmpty());
+        assertTrue(LaneMask.parse(null).isEmpty());
+        assertEquals(new Rect(0, 0, 1000, 500), LaneMask.parse("").getBoundingRegion(1000, 500));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsVerticesWithoutBothCoordinates() {
+        LaneMask.parse("0.1,0.5 0.5 0.5,1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsPolygonsOfTwoVertices() {
+        LaneMask.parse("0.1,0.5 0.5,0.5");
+    }
+
+    @Test
+    public void filter_dropsBoxesCentredOutsideTheLanes() {
+        LaneMask mask = LaneMask.parse("0,0.5 0.5,0.5 0.5,1 0,1");
+        List<Rect> boxes = new ArrayList<>(Arrays.asList(
+                new Rect(100, 300, 100, 40),
+                new Rect(600, 300, 100, 40),
+                new Rect(100, 100, 100, 40)));
+
+        assertEquals(2, mask.filter(boxes, 1000, 500));
+        assertEquals(Arrays.asList(new Rect(100, 300, 100, 40)), boxes);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.vrpdrapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PlateConsensusTest {
+
+    @Test
+    public void add_outvotesSingleCharacterErrors() {
+        PlateConsensus consensus = new PlateConsensus(8, 10.0f);
+        consensus.add("ABC1234", 0.9f);
+        consensus.add("A8C1234", 0.8f);
+        consensus.add("ABC1Z34", 0.7f);
+
+        assertEquals("ABC1234", consensus.getText());
+        assertEquals(7, consensus.getLength());
+        assertFalse(consensus.isSettled());
+    }
+
+    @Test
+    public void add_alignsReadsOfAnotherLength() {
+        PlateConsensus consensus = new PlateConsensus(8, 10.0f);
+        // the reads of the consensus length tie on the third character
+        consensus.add("ABD1234", 0.9f);
+        consensus.add("ABC1234", 0.9f);
+        // a missed and a split character, their other characters still vote
+        consensus.add("ABC124", 0.5f);
+        consensus.add("ABCI1234", 0.5f);
+
+        assertEquals("ABC1234", consensus.getText());
+        assertEquals(7, consensus.getLength());
+    }
+
+    @Test
+    public void add_weighsReadsByConfidence() {
+        PlateConsensus consensus = new PlateConsensus(8, 10.0f);
+        consensus.add("ABC1234", 0.9f);
+        consensus.add("ABC1284", 0.2f);
+        consensus.add("ABC1284", 0.2f);
+
+        assertEquals("ABC1234", consensus.getText());
+        assertEquals(0.5f, consensus.getLead(), 1e-5f);
+    }
+
+    @Test
+    public void add_settlesOnceEveryPositionLeadsByTheMargin() {
+        PlateConsensus consensus = new PlateConsensus(8, 1.5f);
+        consensus.add("ABC1234", 1.0f);
+        assertFalse(consensus.isSettled());
+        consensus.add("ABC1284", 1.0f);
+        assertFalse(consensus.isSettled());
+        consensus.add("ABC1234", 1.0f);
+        assertFalse(consensus.isSettled());
+        consensus.add("ABC1234", 1.0f);
+        assertTrue(consensus.isSettled());
+
+        // later reads are ignored
+        consensus.add("XYZ9999", 1.0f);
+        consensus.add("XYZ9999", 1.0f);
+        consensus.add("XYZ9999", 1.0f);
+        assertEquals("ABC1234", consensus.getText());
+        assertEquals(4, consensus.getReads());
+    }
+
+    @Test
+    public void add_forgetsReadsOlderThanMaxReads() {
+        PlateConsensus consensus = new PlateConsensus(2, 10.0f);
+        consensus.add("ABC1234", 1.0f);
+        consensus.add("ABC1234", 1.0f);
+        consensus.add("ABC9999", 1.0f);
+        consensus.add("ABC9999", 1.0f);
+
+        assertEquals("ABC9999", consensus.getText());
+        assertEquals(4, consensus.getReads());
+    }
+
+    @Test
+    public void add_ignoresEmptyReads() {
+        PlateConsensus consensus = new PlateConsensus(8, 1.5f);
+        consensus.add("", 1.0f);
+        consensus.add(null, 1.0f);
+
+        assertNull(consensus.getText());
+        assertEquals(0, consensus.getReads());
+    }
+}
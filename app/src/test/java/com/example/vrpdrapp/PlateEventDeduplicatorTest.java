@@ -0,0 +1,111 @@
+package com.example.vrpdrapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PlateEventDeduplicatorTest {
+
+    private static long code(char c) {
+        return PlateEventDeduplicator.pack(String.valueOf(c)) >>> 4;
+    }
+
+    // two digit plates at Hamming distance 2 or more of each other, none is a neighbour of another
+    private static String plate(int i) {
+        return String.format("%02dAB%02d", i, i);
+    }
+
+    @Test
+    public void deleteCharacter_matchesPackedPlate() {
+        long key = PlateEventDeduplicator.pack("ABC1234");
+
+        assertEquals(PlateEventDeduplicator.pack("BC1234"), PlateEventDeduplicator.deleteCharacter(key, 0));
+        assertEquals(PlateEventDeduplicator.pack("ABC234"), PlateEventDeduplicator.deleteCharacter(key, 3));
+        assertEquals(PlateEventDeduplicator.pack("ABC123"), PlateEventDeduplicator.deleteCharacter(key, 6));
+        assertEquals(PlateEventDeduplicator.pack("BCDEFGHIJ"),
+                PlateEventDeduplicator.deleteCharacter(PlateEventDeduplicator.pack("ABCDEFGHIJ"), 0));
+        assertEquals(PlateEventDeduplicator.pack("ABCDEFGHI"),
+                PlateEventDeduplicator.deleteCharacter(PlateEventDeduplicator.pack("ABCDEFGHIJ"), 9));
+    }
+
+    @Test
+    public void insertCharacter_matchesPackedPlate() {
+        long key = PlateEventDeduplicator.pack("ABC123");
+
+        assertEquals(PlateEventDeduplicator.pack("XABC123"), PlateEventDeduplicator.insertCharacter(key, 0, code('X')));
+        assertEquals(PlateEventDeduplicator.pack("ABC1X23"), PlateEventDeduplicator.insertCharacter(key, 4, code('X')));
+        assertEquals(PlateEventDeduplicator.pack("ABC123X"), PlateEventDeduplicator.insertCharacter(key, 6, code('X')));
+        assertEquals(PlateEventDeduplicator.pack("ABCDEFGHIJ"),
+                PlateEventDeduplicator.insertCharacter(PlateEventDeduplicator.pack("ABCDEFGHI"), 9, code('J')));
+    }
+
+    @Test
+    public void accept_suppressesReadsWithinEditDistanceOne() {
+        PlateEventDeduplicator events = new PlateEventDeduplicator(1000, 16);
+
+        assertTrue(events.accept("ABC1234", 0));
+        assertFalse(events.accept("ABC1234", 10));
+        assertFalse(events.accept("A8C1234", 20));
+        assertFalse(events.accept("ABC124", 30));
+        assertFalse(events.accept("ABC12344", 40));
+        assertTrue(events.accept("ABD1244", 50));
+
+        assertEquals(2, events.getAccepted());
+        assertEquals(4, events.getSuppressed());
+    }
+
+    @Test
+    public void accept_reportsAgainAfterTheWindow() {
+        PlateEventDeduplicator events = new PlateEventDeduplicator(1000, 16);
+
+        assertTrue(events.accept("ABC1234", 0));
+        // every sighting extends the window
+        assertFalse(events.accept("ABC1234", 900));
+        assertFalse(events.accept("ABC1234", 1800));
+        assertTrue(events.accept("ABC1234", 2800));
+    }
+
+    @Test
+    public void accept_matchesLongPlatesExactly() {
+        PlateEventDeduplicator events = new PlateEventDeduplicator(1000, 16);
+
+        assertTrue(events.accept("ABCDEFGHIJK", 0));
+        assertFalse(events.accept("ABCDEFGHIJK", 10));
+        assertTrue(events.accept("ABCDEFGHIJX", 20));
+    }
+
+    @Test
+    public void expire_keepsTheProbeChainsOfRemainingPlates() {
+        // 64 plates in 128 slots, removing every other one breaks many probe chains
+        PlateEventDeduplicator events = new PlateEventDeduplicator(100, 64);
+        for (int i = 0; i < 64; i++) {
+            assertTrue(events.accept(plate(i), 0));
+        }
+        for (int i = 1; i < 64; i += 2) {
+            assertFalse(events.accept(plate(i), 50));
+        }
+        assertEquals(64, events.size());
+
+        // expires the even plates, the odd ones must still be found after the backward shifts
+        for (int i = 1; i < 64; i += 2) {
+            assertFalse(plate(i), events.accept(plate(i), 100));
+        }
+        assertEquals(32, events.size());
+        for (int i = 0; i < 64; i += 2) {
+            assertTrue(plate(i), events.accept(plate(i), 100));
+        }
+        assertEquals(64, events.size());
+    }
+
+    @Test
+    public void accept_growsPastTheExpectedPlates() {
+        PlateEventDeduplicator events = new PlateEventDeduplicator(1000, 1);
+        for (int i = 0; i < 40; i++) {
+            assertTrue(events.accept(plate(i), i));
+        }
+        for (int i = 0; i < 40; i++) {
+            assertFalse(plate(i), events.accept(plate(i), 100));
+        }
+        assertEquals(40, events.size());
+    }
+}
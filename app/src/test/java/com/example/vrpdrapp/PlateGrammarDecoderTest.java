@@ -0,0 +1,127 @@
+package com.example.vrpdrapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PlateGrammarDecoderTest {
+
+    private static int classOf(char ch) {
+        int c = Arrays.asList(EMNISTNet.CLASS_LABELS).indexOf(String.valueOf(ch));
+        assertTrue("No class for "+ch, c >= 0);
+        return c;
+    }
+
+    private static boolean accepts(PlateFormat format, String plate) {
+        int state = format.getStartState();
+        for (int i = 0; i < plate.length(); i++) {
+            state = format.next(state, classOf(plate.charAt(i)));
+            if(state == PlateFormat.NO_TRANSITION)
+                return false;
+        }
+        return format.isAccepting(state);
+    }
+
+    /**
+     * One OCR result character per string, its candidates given as "label:probability".
+     */
+    private static OcrResult result(String... characters) {
+        OcrResult result = new OcrResult(characters.length, PlateReader.TOP_K);
+        result.reset(characters.length);
+        float[] distribution = new float[EMNISTNet.CLASS_LABELS.length];
+        for (int i = 0; i < characters.length; i++) {
+            if(characters[i] == null) {
+                result.reject(i);
+                continue;
+            }
+            Arrays.fill(distribution, 0.0f);
+            for (String candidate : characters[i].split(" ")) {
+                distribution[classOf(candidate.charAt(0))] = Float.parseFloat(candidate.substring(2));
+            }
+            result.set(i, distribution, distribution.length);
+        }
+        return result;
+    }
+
+    @Test
+    public void format_matchesSlots() {
+        PlateFormat format = PlateFormat.compile("old", "LLLDDDD");
+
+        assertTrue(accepts(format, "ABC1234"));
+        assertFalse(accepts(format, "ABC123"));
+        assertFalse(accepts(format, "AB12345"));
+        assertEquals(7, format.getMinLength());
+        assertEquals(7, format.getMaxLength());
+    }
+
+    @Test
+    public void format_supportsSetsAndQuantifiers() {
+        PlateFormat format = PlateFormat.compile("mixed", "L{3}D[A-J0-9]D{1,2}X?");
+
+        assertTrue(accepts(format, "ABC1J2"));
+        assertTrue(accepts(format, "ABC1523"));
+        assertTrue(accepts(format, "ABC1523X"));
+        assertFalse(accepts(format, "ABC1K23"));
+        assertFalse(accepts(format, "ABC1523Y"));
+        assertEquals(6, format.getMinLength());
+        assertEquals(8, format.getMaxLength());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void format_rejectsUnterminatedSet() {
+        PlateFormat.compile("broken", "LL[A-Z");
+    }
+
+    @Test
+    public void decoder_replacesCharactersOutsideTheFormat() {
+        PlateGrammarDecoder decoder = new PlateGrammarDecoder(10).addFormat("old", "LLLDDDD");
+        OcrResult result = result("A:0.9", "B:0.9", "C:0.6 0:0.3", "1:0.9", "O:0.6 0:0.4", "3:0.9", "4:0.9");
+
+        assertEquals("ABC1O34", result.getText());
+        assertTrue(decoder.decode(result, 0, result.size()));
+        assertEquals("ABC1034", decoder.getText());
+        assertEquals(7, decoder.getLength());
+    }
+
+    @Test
+    public void decoder_picksTheMostProbableFormat() {
+        PlateGrammarDecoder decoder = new PlateGrammarDecoder(10)
+                .addFormat("old", "LLLDDDD")
+                .addFormat("mercosur", "LLLDLDD");
+        OcrResult result = result("A:0.9", "B:0.9", "C:0.9", "1:0.9", "J:0.7 1:0.2", "3:0.9", "4:0.9");
+
+        assertTrue(decoder.decode(result, 0, result.size()));
+        assertEquals("mercosur", decoder.getFormat().getName());
+        assertEquals("ABC1J34", decoder.getText());
+        assertEquals(Math.pow(0.9, 6) * 0.7, decoder.getProbability(), 1e-4);
+    }
+
+    @Test
+    public void decoder_skipsRejectedCharacters() {
+        PlateGrammarDecoder decoder = new PlateGrammarDecoder(10).addFormat("old", "LLLDDDD");
+        OcrResult result = result("A:0.9", null, "B:0.9", "C:0.9", "1:0.9", "2:0.9", "3:0.9", "4:0.9");
+
+        assertTrue(decoder.decode(result, 0, result.size()));
+        assertEquals("ABC1234", decoder.getText());
+    }
+
+    @Test
+    public void decoder_failsOnLengthsOutsideTheFormats() {
+        PlateGrammarDecoder decoder = new PlateGrammarDecoder(10).addFormat("old", "LLLDDDD");
+
+        assertFalse(decoder.decode(result("A:0.9", "B:0.9", "C:0.9", "1:0.9", "2:0.9", "3:0.9"), 0, 6));
+        assertEquals(-1, decoder.getLength());
+        assertEquals(0.0f, decoder.getProbability(), 0.0f);
+    }
+
+    @Test
+    public void decoder_scoresImprobableCandidatesNearZero() {
+        PlateGrammarDecoder decoder = new PlateGrammarDecoder(10).addFormat("old", "LLLDDDD");
+
+        // no digit among the likely candidates of the fifth character
+        assertTrue(decoder.decode(result("A:0.9", "B:0.9", "C:0.9", "1:0.9", "X:0.9", "3:0.9", "4:0.9"), 0, 7));
+        assertTrue(decoder.getProbability() < 1e-6f);
+    }
+}
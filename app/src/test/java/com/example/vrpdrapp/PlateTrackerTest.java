@@ -0,0 +1,89 @@
+package com.example.vrpdrapp;
+
+import org.junit.Test;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlateTrackerTest {
+
+    private static List<Integer> ids(List<PlateTrack> tracks) {
+        List<Integer> ids = new ArrayList<>();
+        for (PlateTrack track : tracks) {
+            ids.add(track.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void iou_ofOverlappingBoxes() {
+        assertEquals(1.0f, PlateTracker.iou(new Rect(0, 0, 10, 10), new Rect(0, 0, 10, 10)), 1e-6f);
+        assertEquals(25.0f / 175.0f, PlateTracker.iou(new Rect(0, 0, 10, 10), new Rect(5, 5, 10, 10)), 1e-6f);
+        assertEquals(0.0f, PlateTracker.iou(new Rect(0, 0, 10, 10), new Rect(10, 0, 10, 10)), 0.0f);
+    }
+
+    @Test
+    public void update_keepsIdsOfMovingPlates() {
+        PlateTracker tracker = new PlateTracker(0.3f, 2, 8, 1.5f);
+        List<Integer> first = new ArrayList<>(ids(tracker.update(Arrays.asList(
+                new Rect(0, 0, 100, 30), new Rect(300, 200, 100, 30)))));
+
+        for (int frame = 1; frame <= 5; frame++) {
+            // listed in the reverse order, the first plate moving right and the second one down
+            List<Integer> ids = ids(tracker.update(Arrays.asList(
+                    new Rect(300, 200 + 5 * frame, 100, 30), new Rect(8 * frame, 0, 100, 30))));
+            assertEquals(Arrays.asList(first.get(1), first.get(0)), ids);
+        }
+        assertEquals(2, tracker.getTracks().size());
+    }
+
+    @Test
+    public void update_findsTheBestOverallAssignment() {
+        PlateTracker tracker = new PlateTracker(0.3f, 2, 8, 1.5f);
+        List<PlateTrack> tracks = new ArrayList<>(tracker.update(Arrays.asList(
+                new Rect(0, 0, 100, 10), new Rect(60, 0, 100, 10))));
+
+        // matching greedily on the best IoU pairs the first track with the first detection (0.67) and leaves
+        // the second detection unmatched, the optimal assignment pairs both (0.33 + 0.43)
+        List<PlateTrack> matched = tracker.update(Arrays.asList(
+                new Rect(20, 0, 100, 10), new Rect(-50, 0, 100, 10)));
+
+        assertSame(tracks.get(1), matched.get(0));
+        assertSame(tracks.get(0), matched.get(1));
+        assertEquals(2, tracker.getTracks().size());
+    }
+
+    @Test
+    public void update_startsTracksForDetectionsWithoutOverlap() {
+        PlateTracker tracker = new PlateTracker(0.3f, 2, 8, 1.5f);
+        int id = tracker.update(Arrays.asList(new Rect(0, 0, 100, 30))).get(0).getId();
+
+        List<PlateTrack> matched = tracker.update(Arrays.asList(new Rect(500, 0, 100, 30)));
+
+        assertNotEquals(id, matched.get(0).getId());
+        assertEquals(2, tracker.getTracks().size());
+    }
+
+    @Test
+    public void update_dropsTracksMissedTooLong() {
+        PlateTracker tracker = new PlateTracker(0.3f, 2, 8, 1.5f);
+        Rect plate = new Rect(0, 0, 100, 30);
+        int id = tracker.update(Arrays.asList(plate)).get(0).getId();
+
+        List<Rect> none = new ArrayList<>();
+        tracker.update(none);
+        tracker.update(none);
+        assertEquals(1, tracker.getTracks().size());
+        assertEquals(id, tracker.update(Arrays.asList(plate)).get(0).getId());
+
+        tracker.update(none);
+        tracker.update(none);
+        tracker.update(none);
+        assertTrue(tracker.getTracks().isEmpty());
+        assertNotEquals(id, tracker.update(Arrays.asList(plate)).get(0).getId());
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.vrpdrapp;
+
+import org.junit.Test;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+
+import static org.junit.Assert.*;
+
+public class YoloTest {
+
+    private static final Size INPUT_SIZE = new Size(768, 416);
+
+    @Test
+    public void regionInputSize_keepsTheFrameScale() {
+        // a quarter of a 1280x720 frame gets a quarter of the input
+        Size size = Yolo.getRegionInputSize(INPUT_SIZE, 1280, 720, new Rect(320, 180, 640, 360));
+
+        assertEquals(384, size.width, 0.0);
+        assertEquals(224, size.height, 0.0);
+    }
+
+    @Test
+    public void regionInputSize_roundsUpToQuartersOfTheInput() {
+        // 60x6 at the frame scale, a quarter of the input side is 192x104, 192x128 at the stride
+        Size size = Yolo.getRegionInputSize(INPUT_SIZE, 1280, 720, new Rect(0, 0, 100, 10));
+
+        assertEquals(192, size.width, 0.0);
+        assertEquals(128, size.height, 0.0);
+
+        // 600x300 at the frame scale
+        size = Yolo.getRegionInputSize(INPUT_SIZE, 1280, 720, new Rect(0, 0, 1000, 520));
+
+        assertEquals(768, size.width, 0.0);
+        assertEquals(320, size.height, 0.0);
+    }
+
+    @Test
+    public void regionInputSize_isAtMostTheInputSize() {
+        Size size = Yolo.getRegionInputSize(INPUT_SIZE, 1280, 720, new Rect(0, 0, 1280, 720));
+
+        assertEquals(INPUT_SIZE.width, size.width, 0.0);
+        assertEquals(INPUT_SIZE.height, size.height, 0.0);
+    }
+}